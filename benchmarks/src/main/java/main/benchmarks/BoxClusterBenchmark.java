@@ -0,0 +1,37 @@
+package main.benchmarks;
+
+import main.BoxCluster;
+import main.PackingObjects.Box;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//Grouping of the boxes by height over their rotations
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BoxClusterBenchmark {
+    @Param({"UNIFORM", "HEAVY_TAILED", "FEW_HEIGHTS"})
+    BoxGenerator.Distribution distribution;
+
+    @Param({"100", "1000", "10000", "100000"})
+    int nbBoxes;
+
+    BoxCluster boxCluster = new BoxCluster();
+    Map<String, Box> boxes;
+
+    @Setup
+    public void setup(){
+        boxes = BoxGenerator.generate(distribution, nbBoxes, 1L);
+    }
+
+    @Benchmark
+    public Map<Integer, List<Box>> getClusters(){
+        return boxCluster.getClusters(boxes);
+    }
+}
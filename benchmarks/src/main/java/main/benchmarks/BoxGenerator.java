@@ -0,0 +1,53 @@
+package main.benchmarks;
+
+import main.PackingObjects.Box;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+//Synthetic box sets for the benchmarks, dimensions in mm and weights in g like the test instances
+public class BoxGenerator {
+    public enum Distribution {
+        //every dimension uniform in [100, 600]
+        UNIFORM,
+        //Pareto distributed dimensions: mostly small boxes and a few large ones
+        HEAVY_TAILED,
+        //a handful of heights, as in manifests dominated by a few product lines
+        FEW_HEIGHTS
+    }
+
+    static final int[] HEIGHTS = {144, 250, 287, 400};
+
+    public static Map<String, Box> generate(Distribution distribution, int nbBoxes, long seed){
+        SplittableRandom random = new SplittableRandom(seed);
+        Map<String, Box> boxes = new LinkedHashMap<>();
+        for(int i = 0; i < nbBoxes; i++){
+            int width, depth, height;
+            switch (distribution){
+                case HEAVY_TAILED:
+                    width = pareto(random);
+                    depth = pareto(random);
+                    height = pareto(random);
+                    break;
+                case FEW_HEIGHTS:
+                    width = random.nextInt(150, 501);
+                    depth = random.nextInt(150, 501);
+                    height = HEIGHTS[random.nextInt(HEIGHTS.length)];
+                    break;
+                default:
+                    width = random.nextInt(100, 601);
+                    depth = random.nextInt(100, 601);
+                    height = random.nextInt(100, 601);
+            }
+            String id = Integer.toString(i);
+            boxes.put(id, new Box(id, i, width, depth, height, random.nextInt(1000, 20001), null));
+        }
+        return boxes;
+    }
+
+    private static int pareto(SplittableRandom random){
+        double value = 80 / Math.pow(1 - random.nextDouble(), 1 / 1.5);
+        return (int) Math.min(value, 780);
+    }
+}
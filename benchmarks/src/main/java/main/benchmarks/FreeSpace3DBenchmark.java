@@ -0,0 +1,57 @@
+package main.benchmarks;
+
+import main.PackingObjects.Box;
+import main.PackingObjects.FreeSpace3D;
+import main.PackingObjects.Pallet;
+import main.PlacementObjects.PositionedRectangle;
+import main.PlacementObjects.Surface;
+import main.PlacementObjects.Vector3D;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Segmentation of a pallet free space by boxes placed at spread positions inside it
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FreeSpace3DBenchmark {
+    @Param({"UNIFORM", "HEAVY_TAILED", "FEW_HEIGHTS"})
+    BoxGenerator.Distribution distribution;
+
+    @Param({"100", "1000", "10000", "100000"})
+    int nbBoxes;
+
+    FreeSpace3D freeSpace;
+    List<Box> boxes;
+
+    @Setup
+    public void setup(){
+        Pallet pallet = new Pallet("Pallet", 800, 1200, 2055, 1200000);
+        freeSpace = new FreeSpace3D(800, 1200, 2055, new Vector3D(0, 0, 0), pallet,
+                new Surface(new PositionedRectangle(800, 1200, new Vector3D(0, 0, 0))));
+        boxes = new ArrayList<>();
+        int i = 0;
+        for(Box box: BoxGenerator.generate(distribution, nbBoxes, 1L).values()){
+            int x = (i * 37) % (800 - Math.min(box.getWidth(), 799));
+            int y = (i * 53) % (1200 - Math.min(box.getDepth(), 1199));
+            int z = (i * 71) % (2055 - Math.min(box.getHeight(), 2054));
+            box.setPosition(new Vector3D(x, y, z));
+            boxes.add(box);
+            i++;
+        }
+    }
+
+    @Benchmark
+    public int segmentSpace(){
+        int nbSegments = 0;
+        for(Box box: boxes){
+            nbSegments += freeSpace.segmentSpace(box).size();
+        }
+        return nbSegments;
+    }
+}
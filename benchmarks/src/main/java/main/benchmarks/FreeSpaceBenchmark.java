@@ -0,0 +1,77 @@
+package main.benchmarks;
+
+import main.LayerBuilder;
+import main.PackingObjects.Box;
+import main.PlacementObjects.PositionedRectangle;
+import main.PlacementObjects.Vector3D;
+import main.State.LayerState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Free rectangle maintenance of a layer: LayerState.updateFreeSpaces and PositionedRectangle.segmentSpace.
+//The placements of a full layer are recorded once, every operation replays them on an empty layer
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FreeSpaceBenchmark {
+    @Param({"UNIFORM", "HEAVY_TAILED", "FEW_HEIGHTS"})
+    BoxGenerator.Distribution distribution;
+
+    @Param({"100", "1000", "10000", "100000"})
+    int nbBoxes;
+
+    List<PositionedRectangle> placements;
+    PositionedRectangle[] freeSpaces;
+    PositionedRectangle[] placedRectangles;
+
+    @Setup
+    public void setup(){
+        List<Box> boxes = new ArrayList<>(BoxGenerator.generate(distribution, nbBoxes, 1L).values());
+        LayerBuilder layerBuilder = new LayerBuilder(1, 1L);
+        LayerState state = new LayerState();
+        placements = new ArrayList<>();
+        for(Box box: boxes){
+            PositionedRectangle p = layerBuilder.findPlacementPosition(box.getWidth(), box.getDepth(), state);
+            if(p == null)
+                continue;
+            int width = p.getWidth() >= box.getWidth() && p.getDepth() >= box.getDepth()? box.getWidth(): box.getDepth();
+            int depth = width == box.getWidth()? box.getDepth(): box.getWidth();
+            PositionedRectangle placement = new PositionedRectangle(width, depth, new Vector3D(p.getPosition()));
+            placements.add(placement);
+            state.updateFreeSpaces(placement);
+        }
+        freeSpaces = new PositionedRectangle[boxes.size()];
+        placedRectangles = new PositionedRectangle[boxes.size()];
+        for(int i = 0; i < boxes.size(); i++){
+            Box box = boxes.get(i);
+            int x = (i * 37) % 400, y = (i * 53) % 600;
+            freeSpaces[i] = new PositionedRectangle(800 - x, 1200 - y, new Vector3D(x, y, 0));
+            placedRectangles[i] = new PositionedRectangle(Math.min(box.getWidth(), 400), Math.min(box.getDepth(), 600),
+                    new Vector3D(x + (i * 11) % 200, y + (i * 13) % 300, 0));
+        }
+    }
+
+    @Benchmark
+    public int fillLayer(){
+        LayerState state = new LayerState();
+        for(PositionedRectangle placement: placements){
+            state.updateFreeSpaces(placement);
+        }
+        return state.getNbFreeSpaces();
+    }
+
+    @Benchmark
+    public int segmentSpace(){
+        int nbSegments = 0;
+        for(int i = 0; i < freeSpaces.length; i++){
+            nbSegments += freeSpaces[i].segmentSpace(placedRectangles[i]).size();
+        }
+        return nbSegments;
+    }
+}
@@ -0,0 +1,54 @@
+package main.benchmarks;
+
+import main.BoxCluster;
+import main.LayerBuilder;
+import main.PackingObjects.Box;
+import main.State.LayerState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+//Layer construction on the largest height cluster. One operation builds one layer, so the score is in layers/second
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LayerBuilderBenchmark {
+    static final int NB_SHUFFLES = 64;
+
+    @Param({"UNIFORM", "HEAVY_TAILED", "FEW_HEIGHTS"})
+    BoxGenerator.Distribution distribution;
+
+    @Param({"100", "1000", "10000", "100000"})
+    int nbBoxes;
+
+    //0 uses one worker per available processor
+    @Param({"1", "0"})
+    int nbWorkers;
+
+    LayerBuilder layerBuilder;
+    List<Box> sameHeightBoxes;
+
+    @Setup
+    public void setup(){
+        layerBuilder = new LayerBuilder(nbWorkers, 1L);
+        sameHeightBoxes = new BoxCluster().findSameHeightBoxes(BoxGenerator.generate(distribution, nbBoxes, 1L));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NB_SHUFFLES)
+    public LayerState constructBestLayer(){
+        return layerBuilder.constructLayers(sameHeightBoxes, NB_SHUFFLES, true).iterator().next();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NB_SHUFFLES)
+    public int constructLayerSet(){
+        Set<LayerState> layers = layerBuilder.constructLayers(sameHeightBoxes, NB_SHUFFLES, false);
+        return layers.size();
+    }
+}
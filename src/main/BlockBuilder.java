@@ -0,0 +1,104 @@
+package main;
+
+import main.PackingObjects.Block;
+import main.PackingObjects.Box;
+import main.PackingObjects.BoxType;
+import main.PlacementObjects.PositionedRectangle;
+import main.State.LayerState;
+
+import java.util.*;
+
+//Builds layers out of blocks of same type boxes, see main.PackingObjects.Block, for the searches of LayerBuilder with
+//the BLOCK layer engine. The boxes of a cluster are grouped by type and the candidate blocks of every type, those of
+//at least two boxes that fit on the layer, are computed once per search and shared by its workers.
+//A layer takes the types in a random order. For each type it places blocks at the left front most free space that
+//holds them, while one fits, choosing at random among the fitting blocks with at least half as many boxes as the
+//largest one. The boxes of no block are left to be placed one by one
+public class BlockBuilder {
+    static final double MIN_BLOCK_SIZE_RATIO = 0.5;
+    //boxes of each type, in the order of the cluster
+    List<List<Box>> boxesByType = new ArrayList<>();
+    //candidate blocks of each type, largest first
+    List<List<Block>> blocksByType = new ArrayList<>();
+    int maxLayerWeight;
+
+    public BlockBuilder(Box[] boxes, int width, int depth, int maxLayerWeight){
+        this.maxLayerWeight = maxLayerWeight;
+        Map<List<Integer>, Integer> types = new HashMap<>();
+        for(Box box: boxes){
+            int type = types.computeIfAbsent(BoxType.getStandingKey(box), key -> types.size());
+            if(type == boxesByType.size())
+                boxesByType.add(new ArrayList<>());
+            boxesByType.get(type).add(box);
+        }
+        int maxSide = Math.max(width, depth);
+        for(List<Box> typeBoxes: boxesByType){
+            Box box = typeBoxes.get(0);
+            List<Block> blocks = new ArrayList<>();
+            for(int nbX = 1; nbX <= typeBoxes.size() && nbX * box.getWidth() <= maxSide; nbX++){
+                for(int nbY = 1; nbX * nbY <= typeBoxes.size() && nbY * box.getDepth() <= maxSide; nbY++){
+                    if(nbX * nbY < 2)
+                        continue;
+                    Block block = new Block(box.getOrientations(), nbX, nbY, box.getWeight());
+                    boolean fits = block.getWidth() <= width && block.getDepth() <= depth
+                            || block.getDepth() <= width && block.getWidth() <= depth;
+                    if(fits && block.getWeight() <= maxLayerWeight)
+                        blocks.add(block);
+                }
+            }
+            blocks.sort(Comparator.comparing(Block::getNbBoxes).reversed());
+            blocksByType.add(blocks);
+        }
+    }
+
+    //Places blocks in the layer and returns the boxes left out
+    public List<Box> placeBlocks(LayerState layer, SplittableRandom random){
+        int[] order = new int[boxesByType.size()];
+        for(int t = 0; t < order.length; t++){
+            order[t] = t;
+        }
+        for(int t = order.length - 1; t > 0; t--){
+            int j = random.nextInt(t + 1);
+            int temp = order[t];
+            order[t] = order[j];
+            order[j] = temp;
+        }
+        List<Box> leftBoxes = new ArrayList<>();
+        List<Block> fittingBlocks = new ArrayList<>();
+        List<Integer> freeSpaces = new ArrayList<>();
+        for(int t: order){
+            List<Box> typeBoxes = boxesByType.get(t);
+            int nbPlaced = 0;
+            while(true){
+                fittingBlocks.clear();
+                freeSpaces.clear();
+                for(Block block: blocksByType.get(t)){
+                    if(!fittingBlocks.isEmpty() && block.getNbBoxes() < fittingBlocks.get(0).getNbBoxes() * MIN_BLOCK_SIZE_RATIO)
+                        break;
+                    if(block.getNbBoxes() > typeBoxes.size() - nbPlaced || block.getBottomArea() > layer.getTotalFreeArea()
+                            || layer.getTotalWeight() + block.getWeight() > maxLayerWeight)
+                        continue;
+                    int index = layer.findFeasibleFreeSpace(block.getWidth(), block.getDepth());
+                    if(index >= 0){
+                        fittingBlocks.add(block);
+                        freeSpaces.add(index);
+                    }
+                }
+                if(fittingBlocks.isEmpty())
+                    break;
+                int chosen = random.nextInt(fittingBlocks.size());
+                Block block = fittingBlocks.get(chosen);
+                PositionedRectangle space = layer.getFreeSpace(freeSpaces.get(chosen));
+                List<Box> blockBoxes = typeBoxes.subList(nbPlaced, nbPlaced + block.getNbBoxes());
+                //the free space may only hold the block turned a quarter
+                if(space.getWidth() >= block.getWidth() && space.getDepth() >= block.getDepth())
+                    layer.placeBlock(blockBoxes, space.getXLeft(), space.getYFront(), block.getOrientation(), block.getNbX(), block.getNbY());
+                else
+                    layer.placeBlock(blockBoxes, space.getXLeft(), space.getYFront(), block.getTurnedOrientation(), block.getNbY(), block.getNbX());
+                nbPlaced += block.getNbBoxes();
+            }
+            leftBoxes.addAll(typeBoxes.subList(nbPlaced, typeBoxes.size()));
+        }
+        return leftBoxes;
+    }
+}
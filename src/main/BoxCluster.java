@@ -1,13 +1,14 @@
 package main;
 
 import main.PackingObjects.Box;
-import main.PackingObjects.Cuboid;
+import main.PackingObjects.OrientationTable;
 import main.utils.InputReader;
 import main.utils.OutputWriter;
 
 import java.io.IOException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.groupingBy;
@@ -26,7 +27,8 @@ public class BoxCluster {
         Map<Integer, List<Box>> boxClusterByHeight = getClusters(boxesToPack);
 
         Map<Integer, Integer> areaByHeight = boxClusterByHeight.entrySet().stream().collect(Collectors.toMap(Entry::getKey, e ->e.getValue().stream().mapToInt(box -> box.getBottomArea()).sum()));
-        Integer bestDimensionValue = targetHeight == null? Collections.max(areaByHeight.entrySet(), Comparator.comparingInt(Entry::getValue)).getKey(): targetHeight;
+        //ties go to the lowest height so that the choice does not depend on the map iteration order
+        Integer bestDimensionValue = targetHeight == null? Collections.max(areaByHeight.entrySet(), Comparator.comparingInt((Entry<Integer, Integer> e) -> e.getValue()).thenComparing(Entry::getKey, Comparator.reverseOrder())).getKey(): targetHeight;
 
         //Return these boxes having this dimension value
         List<Box> boxList = boxClusterByHeight.get(bestDimensionValue);
@@ -35,25 +37,39 @@ public class BoxCluster {
     }
 
     public Map<String, Box> getMaxSizeCluster(Map<String, Box> boxesMap){
-        Map<Integer, List<Box>> boxClusters = this.getClusters(boxesMap);
+        return getMaxSizeCluster(boxesMap, box -> true);
+    }
+
+    //The largest cluster of the boxes standing in the orientations accepted by the filter
+    public Map<String, Box> getMaxSizeCluster(Map<String, Box> boxesMap, Predicate<Box> standingFilter){
+        Map<Integer, List<Box>> boxClusters = this.getClusters(boxesMap, standingFilter);
         List<List<Box>> clusterLists = boxClusters.values().stream().collect(Collectors.toList());
-        Comparator<List<Box>> comparator = Comparator.comparing(List::size);
-        Collections.sort(clusterLists, comparator.reversed());
+        //ties go to the lowest height so that the choice does not depend on the map iteration order
+        Comparator<List<Box>> comparator = Comparator.comparing((List<Box> l) -> l.size()).reversed().thenComparing(l -> l.get(0).getHeight());
+        Collections.sort(clusterLists, comparator);
         Map<String, Box> collect = clusterLists.get(0).stream().collect(Collectors.toMap(box -> box.getId(), box -> box));
         return collect;
     }
 
     public Map<Integer, List<Box>> getClusters(Map<String, Box> boxesMap){
+        return getClusters(boxesMap, box -> true);
+    }
+
+    public Map<Integer, List<Box>> getClusters(Map<String, Box> boxesMap, Predicate<Box> standingFilter){
         //First find the unique dimension values for each box
         //For each unique dimension value, calculate the area of the other two dimensions
+        //the boxes are visited in id order, so the order inside a cluster, and with it the shuffles of a seeded run,
+        //does not depend on the map implementation
         List<Box> rotatedDuplicates = new ArrayList<>();
-        for(Box box: boxesMap.values()){
-            rotatedDuplicates.add(new Box(box, new Cuboid(box.getHeight(), box.getDepth(), box.getWidth())));
-            if(box.getDepth() != box.getWidth()){
-                rotatedDuplicates.add(new Box(box, new Cuboid(box.getWidth(), box.getHeight(), box.getDepth())));
-            }
-            if(box.getHeight() != box.getWidth() && box.getHeight() != box.getDepth()){
-                rotatedDuplicates.add(new Box(box, new Cuboid(box.getWidth(), box.getDepth(), box.getHeight())));
+        List<Box> boxes = new ArrayList<>(boxesMap.values());
+        boxes.sort(Comparator.comparing(Box::getId));
+        //one duplicate per distinct dimension used as height
+        for(Box box: boxes){
+            OrientationTable orientations = box.getOrientations();
+            for(int i = 0; i < orientations.getNbStandingOrientations(); i++){
+                Box rotatedDuplicate = new Box(box, orientations.getOrientation(orientations.getStandingOrientation(i)));
+                if(standingFilter.test(rotatedDuplicate))
+                    rotatedDuplicates.add(rotatedDuplicate);
             }
         }
 
@@ -1,5 +1,6 @@
 package main.Constraints;
 
 abstract class Constraint {
-    abstract public boolean isFeasible();
+    //Whether the candidate can go on top of the items already in the engine
+    abstract boolean isFeasible(ConstraintEngine engine, StackedItem candidate);
 }
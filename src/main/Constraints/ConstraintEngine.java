@@ -0,0 +1,203 @@
+package main.Constraints;
+
+import main.PackingObjects.Box;
+import main.PackingObjects.Cuboid;
+import main.PackingObjects.PalletType;
+import main.PlacementObjects.Placement;
+import main.PlacementObjects.Vector3D;
+import main.utils.PackingConfiguration;
+
+import java.util.*;
+
+//Checks placements in one pallet against the configured constraints, WEIGHT, SUPPORT, LOAD_CAPACITY and
+//NON_OVERLAPPING, and keeps the running totals they need: the total weight, the load on every box and the boxes by
+//top height. A check only looks at the boxes right under the candidate and, for the load, at the boxes below those.
+//The constraints are compiled once into an array, cheapest first, and a check stops at the first one that fails.
+//Free spaces and layers never overlap, so NON_OVERLAPPING is only for placements made some other way
+public class ConstraintEngine {
+    public static final List<String> DEFAULT_CONSTRAINTS = Collections.unmodifiableList(Arrays.asList("WEIGHT", "SUPPORT", "LOAD_CAPACITY"));
+    public static final double DEFAULT_SUPPORT_AREA_RATIO = 0.8;
+
+    Constraint[] constraints;
+    //SUPPORT or LOAD_CAPACITY, checked where the box stands
+    boolean positionDependent;
+    long totalWeight;
+    ArrayList<StackedItem> items = new ArrayList<>();
+    TreeMap<Integer, ArrayList<StackedItem>> itemsByZTop = new TreeMap<>();
+    //added loads of the placed items, in placement order, to roll them back
+    ArrayList<Map<StackedItem, Double>> loadLog = new ArrayList<>();
+    //the last checked candidate, placed without computing it again
+    StackedItem lastCandidate;
+
+    public ConstraintEngine(PalletType palletType, PackingConfiguration configuration){
+        this(palletType.getCapacity(), configuration.getConstraints(), configuration.getSupportAreaRatio());
+    }
+
+    public ConstraintEngine(int maxWeight, List<String> constraintNames, double supportAreaRatio){
+        for(String name: constraintNames){
+            if(!name.equals("WEIGHT") && !name.equals("SUPPORT") && !name.equals("LOAD_CAPACITY") && !name.equals("NON_OVERLAPPING"))
+                throw new IllegalArgumentException("Unknown constraint " + name);
+        }
+        List<Constraint> compiled = new ArrayList<>();
+        if(constraintNames.contains("WEIGHT"))
+            compiled.add(new TotalWeightConstraint(maxWeight));
+        if(constraintNames.contains("SUPPORT"))
+            compiled.add(new SupportConstraint(supportAreaRatio));
+        if(constraintNames.contains("NON_OVERLAPPING"))
+            compiled.add(new NonOverlappingConstraint());
+        if(constraintNames.contains("LOAD_CAPACITY"))
+            compiled.add(new LoadCapacityConstraint());
+        constraints = compiled.toArray(new Constraint[0]);
+        positionDependent = constraintNames.contains("SUPPORT") || constraintNames.contains("LOAD_CAPACITY");
+    }
+
+    //true if a box may break the constraints at one position and not at another inside the same free space
+    public boolean isPositionDependent() {
+        return positionDependent;
+    }
+
+    public boolean isFeasible(Box box, int x, int y, int z, int width, int depth, int height){
+        StackedItem candidate = getCandidate(box, x, y, z, width, depth, height);
+        for(Constraint constraint: constraints){
+            if(!constraint.isFeasible(this, candidate))
+                return false;
+        }
+        return true;
+    }
+
+    //The box at its current position and dimensions
+    public boolean isFeasible(Box box){
+        return isFeasible(box, box.getXLeft(), box.getYFront(), box.getZBottom(), box.getWidth(), box.getDepth(), box.getHeight());
+    }
+
+    public boolean isFeasible(Box box, Vector3D position, Cuboid orientation){
+        return isFeasible(box, position.getX(), position.getY(), position.getZ(), orientation.getWidth(),
+                orientation.getDepth(), orientation.getHeight());
+    }
+
+    public boolean isFeasible(Placement p){
+        return isFeasible(p.getBox(), p.getPosition(), p.getOrientation());
+    }
+
+    //Records the placement, whether it was checked or not
+    public void place(Box box, int x, int y, int z, int width, int depth, int height){
+        StackedItem item = getCandidate(box, x, y, z, width, depth, height);
+        lastCandidate = null;
+        Map<StackedItem, Double> addedLoads = computeAddedLoads(item);
+        for(Map.Entry<StackedItem, Double> added: addedLoads.entrySet()){
+            added.getKey().load += added.getValue();
+        }
+        items.add(item);
+        itemsByZTop.computeIfAbsent(item.getZTop(), zTop -> new ArrayList<>()).add(item);
+        loadLog.add(addedLoads);
+        totalWeight += box.getWeight();
+    }
+
+    public void place(Box box){
+        place(box, box.getXLeft(), box.getYFront(), box.getZBottom(), box.getWidth(), box.getDepth(), box.getHeight());
+    }
+
+    public void place(Placement p){
+        place(p.getBox(), p.getPosition().getX(), p.getPosition().getY(), p.getPosition().getZ(),
+                p.getOrientation().getWidth(), p.getOrientation().getDepth(), p.getOrientation().getHeight());
+    }
+
+    //Places the placement if it is feasible
+    public boolean tryPlace(Placement p){
+        if(!isFeasible(p))
+            return false;
+        place(p);
+        return true;
+    }
+
+    //Number of placements so far, to roll back to
+    public int mark(){
+        return items.size();
+    }
+
+    //Removes the placements made since the mark, last first
+    public void rollback(int mark){
+        lastCandidate = null;
+        while(items.size() > mark){
+            StackedItem item = items.remove(items.size() - 1);
+            for(Map.Entry<StackedItem, Double> added: loadLog.remove(loadLog.size() - 1).entrySet()){
+                added.getKey().load -= added.getValue();
+            }
+            ArrayList<StackedItem> sameTop = itemsByZTop.get(item.getZTop());
+            sameTop.remove(sameTop.size() - 1);
+            if(sameTop.isEmpty())
+                itemsByZTop.remove(item.getZTop());
+            totalWeight -= item.box.getWeight();
+        }
+    }
+
+    public long getTotalWeight() {
+        return totalWeight;
+    }
+
+    public int getNbPlacements() {
+        return items.size();
+    }
+
+    private StackedItem getCandidate(Box box, int x, int y, int z, int width, int depth, int height){
+        if(lastCandidate == null || !lastCandidate.isAt(box, x, y, z, width, depth, height))
+            lastCandidate = new StackedItem(box, x, y, z, width, depth, height);
+        return lastCandidate;
+    }
+
+    //Sets the items whose top touches the bottom of the candidate, with their contact areas
+    void findSupporters(StackedItem candidate){
+        if(candidate.supporters != null)
+            return;
+        List<StackedItem> supporters = new ArrayList<>();
+        List<Integer> areas = new ArrayList<>();
+        int supportedArea = 0;
+        ArrayList<StackedItem> sameTop = candidate.z == 0? null: itemsByZTop.get(candidate.z);
+        if(sameTop != null){
+            for(StackedItem item: sameTop){
+                int overlapWidth = Math.min(item.x + item.width, candidate.x + candidate.width) - Math.max(item.x, candidate.x);
+                int overlapDepth = Math.min(item.y + item.depth, candidate.y + candidate.depth) - Math.max(item.y, candidate.y);
+                if(overlapWidth > 0 && overlapDepth > 0){
+                    supporters.add(item);
+                    areas.add(overlapWidth * overlapDepth);
+                    supportedArea += overlapWidth * overlapDepth;
+                }
+            }
+        }
+        candidate.supporters = supporters.toArray(new StackedItem[0]);
+        candidate.contactAreas = areas.stream().mapToInt(a -> a).toArray();
+        candidate.supportedArea = supportedArea;
+        candidate.shares = new double[candidate.supporters.length];
+        for(int i = 0; i < candidate.shares.length; i++){
+            candidate.shares[i] = (double) candidate.contactAreas[i] / supportedArea;
+        }
+    }
+
+    //The load the candidate adds to every item below it. The weight goes down level by level, highest items first,
+    //so every item passes its whole added load to its supporters once
+    Map<StackedItem, Double> computeAddedLoads(StackedItem candidate){
+        if(candidate.addedLoads != null)
+            return candidate.addedLoads;
+        findSupporters(candidate);
+        Map<StackedItem, Double> addedLoads = new HashMap<>();
+        PriorityQueue<StackedItem> pending = new PriorityQueue<>(Comparator.comparingInt((StackedItem item) -> -item.z));
+        for(int i = 0; i < candidate.supporters.length; i++){
+            addLoad(addedLoads, pending, candidate.supporters[i], candidate.box.getWeight() * candidate.shares[i]);
+        }
+        while(!pending.isEmpty()){
+            StackedItem item = pending.poll();
+            double load = addedLoads.get(item);
+            for(int i = 0; i < item.supporters.length; i++){
+                addLoad(addedLoads, pending, item.supporters[i], load * item.shares[i]);
+            }
+        }
+        candidate.addedLoads = addedLoads;
+        return addedLoads;
+    }
+
+    private void addLoad(Map<StackedItem, Double> addedLoads, PriorityQueue<StackedItem> pending, StackedItem item, double load){
+        Double previous = addedLoads.put(item, addedLoads.getOrDefault(item, 0.0) + load);
+        if(previous == null)
+            pending.add(item);
+    }
+}
@@ -0,0 +1,18 @@
+package main.Constraints;
+
+import java.util.Map;
+
+//No box bears more than its load capacity times its top area, counting the weight of all the boxes above it.
+//The weight of a box goes to the boxes under it in proportion to their contact areas, and on down the same way
+public class LoadCapacityConstraint extends Constraint {
+
+    @Override
+    boolean isFeasible(ConstraintEngine engine, StackedItem candidate) {
+        for(Map.Entry<StackedItem, Double> added: engine.computeAddedLoads(candidate).entrySet()){
+            StackedItem item = added.getKey();
+            if(item.load + added.getValue() > item.maxLoad)
+                return false;
+        }
+        return true;
+    }
+}
@@ -1,9 +1,20 @@
 package main.Constraints;
 
+import java.util.List;
+
+//Only the items whose top is above the bottom of the candidate are looked at
 public class NonOverlappingConstraint extends Constraint {
 
     @Override
-    public boolean isFeasible() {
-        return false;
+    boolean isFeasible(ConstraintEngine engine, StackedItem candidate) {
+        for(List<StackedItem> items: engine.itemsByZTop.tailMap(candidate.z, false).values()){
+            for(StackedItem item: items){
+                if(item.z < candidate.getZTop()
+                        && item.x < candidate.x + candidate.width && candidate.x < item.x + item.width
+                        && item.y < candidate.y + candidate.depth && candidate.y < item.y + item.depth)
+                    return false;
+            }
+        }
+        return true;
     }
 }
@@ -0,0 +1,51 @@
+package main.Constraints;
+
+import main.PackingObjects.Box;
+
+import java.util.Map;
+
+//A box placed, or about to be placed, in a ConstraintEngine, with the items it stands on
+class StackedItem {
+    Box box;
+    int x, y, z, width, depth, height;
+    //grams the top can bear, and grams resting on it from all the items above
+    double maxLoad;
+    double load;
+    //items whose top touches the bottom, the area they support and the share of the weight on this item each bears
+    StackedItem[] supporters;
+    int[] contactAreas;
+    int supportedArea;
+    double[] shares;
+    //load added to every item below when this one is placed, computed on the first check
+    Map<StackedItem, Double> addedLoads;
+
+    StackedItem(Box box, int x, int y, int z, int width, int depth, int height){
+        this.box = box;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.width = width;
+        this.depth = depth;
+        this.height = height;
+        maxLoad = box.getLoadCapacity() == Box.UNLIMITED_LOAD_CAPACITY? Double.POSITIVE_INFINITY:
+                box.getLoadCapacity() * (double) width * depth / 1000;
+    }
+
+    int getZTop(){
+        return z + height;
+    }
+
+    int getBottomArea(){
+        return width * depth;
+    }
+
+    boolean isAt(Box box, int x, int y, int z, int width, int depth, int height){
+        return this.box == box && this.x == x && this.y == y && this.z == z && this.width == width && this.depth == depth
+                && this.height == height;
+    }
+
+    //Whether the unit square at (px, py) is under the top of the item
+    boolean covers(int px, int py){
+        return x <= px && px < x + width && y <= py && py < y + depth;
+    }
+}
@@ -0,0 +1,56 @@
+package main.Constraints;
+
+//What a box needs under its bottom when it is not on the floor, by support type:
+//FULL: at least supportAreaRatio of the bottom area lies on the tops of boxes,
+//ALL_EDGES: the corners and the middles of the four edges are supported,
+//CORNERS: the four corners are supported,
+//SHORT_EDGES: the corners and the middles of the two shortest edges are supported.
+//The points are the unit squares at the corners and edge middles of the bottom
+public class SupportConstraint extends Constraint {
+    double supportAreaRatio;
+
+    public SupportConstraint(double supportAreaRatio){
+        this.supportAreaRatio = supportAreaRatio;
+    }
+
+    @Override
+    boolean isFeasible(ConstraintEngine engine, StackedItem candidate) {
+        if(candidate.z == 0)
+            return true;
+        engine.findSupporters(candidate);
+        if(candidate.supportedArea == 0)
+            return false;
+        int xLeft = candidate.x, xRight = candidate.x + candidate.width - 1, xMiddle = candidate.x + candidate.width / 2;
+        int yFront = candidate.y, yBack = candidate.y + candidate.depth - 1, yMiddle = candidate.y + candidate.depth / 2;
+        switch(candidate.box.getSupportType()){
+            case "FULL":
+                return candidate.supportedArea >= supportAreaRatio * candidate.getBottomArea();
+            case "ALL_EDGES":
+                return isCornerSupported(candidate, xLeft, xRight, yFront, yBack)
+                        && isSupported(candidate, xMiddle, yFront) && isSupported(candidate, xMiddle, yBack)
+                        && isSupported(candidate, xLeft, yMiddle) && isSupported(candidate, xRight, yMiddle);
+            case "CORNERS":
+                return isCornerSupported(candidate, xLeft, xRight, yFront, yBack);
+            default:
+                //the front and back edges are the short ones when the bottom is deeper than wide
+                if(candidate.width <= candidate.depth)
+                    return isCornerSupported(candidate, xLeft, xRight, yFront, yBack)
+                            && isSupported(candidate, xMiddle, yFront) && isSupported(candidate, xMiddle, yBack);
+                return isCornerSupported(candidate, xLeft, xRight, yFront, yBack)
+                        && isSupported(candidate, xLeft, yMiddle) && isSupported(candidate, xRight, yMiddle);
+        }
+    }
+
+    private boolean isCornerSupported(StackedItem candidate, int xLeft, int xRight, int yFront, int yBack){
+        return isSupported(candidate, xLeft, yFront) && isSupported(candidate, xRight, yFront)
+                && isSupported(candidate, xLeft, yBack) && isSupported(candidate, xRight, yBack);
+    }
+
+    private boolean isSupported(StackedItem candidate, int px, int py){
+        for(StackedItem supporter: candidate.supporters){
+            if(supporter.covers(px, py))
+                return true;
+        }
+        return false;
+    }
+}
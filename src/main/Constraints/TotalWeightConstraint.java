@@ -3,18 +3,16 @@ package main.Constraints;
 public class TotalWeightConstraint extends Constraint {
     int maxWeight;
 
-    public TotalWeightConstraint(){}
-
     public TotalWeightConstraint(int maxWeight){
         this.maxWeight = maxWeight;
     }
 
-    public boolean isFeasible(int currentWeight){
-        return currentWeight <= maxWeight ? true : false;
+    public boolean isFeasible(long currentWeight){
+        return currentWeight <= maxWeight;
     }
 
     @Override
-    public boolean isFeasible() {
-        return false;
+    boolean isFeasible(ConstraintEngine engine, StackedItem candidate) {
+        return isFeasible(engine.getTotalWeight() + candidate.box.getWeight());
     }
 }
@@ -1,19 +1,153 @@
 package main;
 
+import main.Metrics.Histogram;
+import main.Metrics.PackingMetrics;
 import main.PackingObjects.Box;
+import main.PackingObjects.BoxType;
 import main.PackingObjects.Cuboid;
+import main.PackingObjects.OrientationTable;
+import main.PackingObjects.PalletType;
 import main.PlacementObjects.PositionedRectangle;
 import main.PlacementObjects.Rectangle;
+import main.State.LayerCache;
+import main.State.LayerPool;
 import main.State.LayerState;
+import main.utils.PackingConfiguration;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 public class LayerBuilder {
     Map<String, Box> boxesToPack = null;
     BoxCluster cluster = new BoxCluster();
+    static final int ROUND_SHUFFLES_PER_WORKER = 64;
+    //the pools of the builders created with a number of workers, one per parallelism shared by all of them. Their
+    //threads are daemons and idle ones time out, so the pools are never shut down
+    static final Map<Integer, ForkJoinPool> SHARED_POOLS = new ConcurrentHashMap<>();
+    ForkJoinPool pool;
+    SplittableRandom random;
+    //the layers are built on the bottom of this pallet type
+    PalletType palletType;
+    //drop the layers whose boxes are all in a larger layer of the same height before set covering. Off by default:
+    //the solvers select disjoint layers, so a dropped layer may be the only one left that fits between the others.
+    //With box types the layers are always dropped, the patterns of a type are few and cutting stock needs the large ones
+    boolean dropDominatedLayers;
+    //the largest layers kept of every cluster, a search keeps every distinct layer it builds, 0 keeps them all. Not
+    //applied with box types, the pruned pools are small
+    int maxLayersPerCluster;
+    //a layer heavier than this could not go on any pallet, Integer.MAX_VALUE without the WEIGHT constraint
+    int maxLayerWeight;
+    //the shuffle loops record into these directly, once per range of shuffles or per layer
+    PackingMetrics metrics;
+    LongAdder layerShuffles;
+    LongAdder prunedShuffles;
+    LongAdder insertionShuffles;
+    Histogram freeSpaces;
+    //best layers of the clusters seen before, possibly in other orders, null when not cached
+    LayerCache layerCache;
+    //search on the boxes of each type a layer can hold at most, instead of all the boxes of the type
+    boolean aggregateBoxTypes;
+    //SHUFFLE or BLOCK, how the layers of a search are built
+    String layerEngine;
+
     public LayerBuilder(){
+        this(PackingConfiguration.getDefault());
+    }
+
+    public LayerBuilder(PackingConfiguration configuration){
+        this(configuration, configuration.getPalletType(), configuration.getNbWorkers(), new SplittableRandom(configuration.getSeed()));
+    }
+
+    public LayerBuilder(int nbWorkers, long seed){
+        this(PackingConfiguration.getDefault(), PackingConfiguration.getDefault().getPalletType(), nbWorkers, new SplittableRandom(seed));
+    }
+
+    //nbWorkers <= 0 uses one worker per available processor
+    //the random generator is only used by the calling thread, the workers derive their own generators from it
+    public LayerBuilder(PackingConfiguration configuration, PalletType palletType, int nbWorkers, SplittableRandom random){
+        this(configuration, palletType, nbWorkers, random, new PackingMetrics());
+    }
+
+    public LayerBuilder(PackingConfiguration configuration, PalletType palletType, int nbWorkers, SplittableRandom random,
+                        PackingMetrics metrics){
+        this(configuration, palletType, getSharedPool(nbWorkers), random, metrics);
+    }
+
+    //A builder running its searches in the given pool, e.g. one pool shared by the orders of the packing service
+    public LayerBuilder(PackingConfiguration configuration, PalletType palletType, ForkJoinPool pool, SplittableRandom random,
+                        PackingMetrics metrics){
+        this.pool = pool;
+        this.random = random;
+        this.palletType = palletType;
+        this.dropDominatedLayers = configuration.isDropDominatedLayers();
+        this.maxLayersPerCluster = configuration.getMaxLayersPerCluster();
+        this.aggregateBoxTypes = configuration.isAggregateBoxTypes();
+        this.layerEngine = configuration.getLayerEngine();
+        this.maxLayerWeight = configuration.getConstraints().contains("WEIGHT")? palletType.getCapacity(): Integer.MAX_VALUE;
+        setMetrics(metrics);
+    }
+
+    //A builder of layers on the bottom of another pallet type, sharing the workers of this one. Its random generator is
+    //split from this one, so the layers only depend on the seed and the order the builders are created in
+    public LayerBuilder forPalletType(PalletType palletType){
+        LayerBuilder builder = new LayerBuilder(pool, random.split(), palletType, dropDominatedLayers, maxLayersPerCluster,
+                aggregateBoxTypes, layerEngine, maxLayerWeight == Integer.MAX_VALUE? Integer.MAX_VALUE: palletType.getCapacity(),
+                metrics);
+        builder.updateBoxesToPack(boxesToPack);
+        builder.setLayerCache(layerCache);
+        return builder;
+    }
+
+    private LayerBuilder(ForkJoinPool pool, SplittableRandom random, PalletType palletType, boolean dropDominatedLayers,
+                         int maxLayersPerCluster, boolean aggregateBoxTypes, String layerEngine, int maxLayerWeight,
+                         PackingMetrics metrics){
+        this.pool = pool;
+        this.random = random;
+        this.palletType = palletType;
+        this.dropDominatedLayers = dropDominatedLayers;
+        this.maxLayersPerCluster = maxLayersPerCluster;
+        this.aggregateBoxTypes = aggregateBoxTypes;
+        this.layerEngine = layerEngine;
+        this.maxLayerWeight = maxLayerWeight;
+        setMetrics(metrics);
+    }
 
+    private static ForkJoinPool getSharedPool(int nbWorkers){
+        int parallelism = nbWorkers > 0? nbWorkers: Runtime.getRuntime().availableProcessors();
+        return SHARED_POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+    }
+
+    private void setMetrics(PackingMetrics metrics){
+        this.metrics = metrics;
+        layerShuffles = metrics.counter("layer_shuffles_total");
+        prunedShuffles = metrics.counter("layer_shuffles_pruned_total");
+        insertionShuffles = metrics.counter("insertion_shuffles_total");
+        freeSpaces = metrics.histogram("layer_free_spaces");
+    }
+
+    public PackingMetrics getMetrics() {
+        return metrics;
+    }
+
+    //generateBestLayer looks the cluster up in the cache first, and keeps the layers it searches there. A cluster another
+    //builder of the cache is searching is waited for
+    public void setLayerCache(LayerCache layerCache) {
+        this.layerCache = layerCache;
+    }
+
+    //An empty layer on the pallet type of the builder
+    public LayerState newLayer(){
+        return new LayerState(palletType.getWidth(), palletType.getDepth());
+    }
+
+    public PalletType getPalletType() {
+        return palletType;
     }
 
     public void updateBoxesToPack(Map<String, Box> boxesToPack){
@@ -31,151 +165,497 @@ public class LayerBuilder {
     }
 
     public Set<LayerState> constructLayers(List<Box> sameHeightBoxes, int nbShuffles, boolean needBest){
-        Map<String, Box> sameHeightBoxesMap = new HashMap<>();
-        ArrayList<String> sameHeightBoxesIds = new ArrayList<>();
-        for(Box box: sameHeightBoxes){
-            sameHeightBoxesMap.put(box.getId(), box);
-            sameHeightBoxesIds.add(box.getId());
-        }
-        Set<LayerState> layers = new HashSet<>();
+        return constructLayers(sameHeightBoxes, SearchBudget.shuffles(nbShuffles), needBest);
+    }
+
+    //Anytime search: the shuffles run in rounds over the workers, and between rounds the search stops when the budget
+    //is used up, when the best layer reaches the area upper bound or when it has not improved for the stall limit.
+    //Rounds have a fixed size for a given number of workers, so apart from the time limits the result only depends on
+    //the seed and the number of workers
+    public Set<LayerState> constructLayers(List<Box> sameHeightBoxes, SearchBudget budget, boolean needBest){
+        //every search gets its own seed so that consecutive layers do not replay the same shuffles
+        ShuffleResult result = search(sameHeightBoxes, budget, needBest, random.nextLong());
+        Set<LayerState> layers = new LinkedHashSet<>();
         if(needBest)
-            layers.add(new LayerState());
-        for(int i = 0; i < nbShuffles; i++){
-            ArrayList<String> shuffledSequence = new ArrayList<>(sameHeightBoxesIds);
-            Collections.shuffle(shuffledSequence);
-            LayerState state = new LayerState();
-            Box box = sameHeightBoxesMap.get(shuffledSequence.get(0));
-            //state.setLayerHeight(box.getHeight());
-            PositionedRectangle p = findPlacementPosition(box.getBottomRectangle(), state);
-            while(!shuffledSequence.isEmpty()&& p!=null){
-                Cuboid new_dims = randomlyChooseHorizontalOrientation(p, box.getDims());
-                state.updateState(box, p.getPosition(), new_dims);
-                shuffledSequence.remove(box.getId());
-                for(String id: shuffledSequence){
-                    box = sameHeightBoxesMap.get(id);
-                    p = findPlacementPosition(box.getBottomRectangle(), state);
-                    if(p!=null)
+            layers.add(result.best);
+        else
+            layers.addAll(result.layers.getLayers());
+        return layers;
+    }
+
+    private ShuffleResult search(List<Box> sameHeightBoxes, SearchBudget budget, boolean needBest, long seed){
+        Box[] boxes = sameHeightBoxes.toArray(new Box[0]);
+        long deadline = budget.getDeadline(System.nanoTime());
+        //a long, the bottom area of a large cluster does not fit in an int
+        long clusterArea = 0;
+        for(Box box: boxes){
+            clusterArea += box.getBottomArea();
+        }
+        //no layer covers more than the layer area or the total bottom area of the boxes
+        long areaUpperBound = Math.min(palletType.getBottomArea(), clusterArea);
+        //used area of the best layer found so far by any worker
+        AtomicInteger bestArea = new AtomicInteger(0);
+        int roundSize = pool.getParallelism() * ROUND_SHUFFLES_PER_WORKER;
+        //the blocks of the boxes, shared by the workers
+        BlockBuilder blocks = layerEngine.equals("BLOCK")? new BlockBuilder(boxes, palletType.getWidth(), palletType.getDepth(), maxLayerWeight): null;
+        ShuffleResult result = new ShuffleResult(needBest, boxes);
+        int nbShuffles = 0;
+        while(true){
+            int to = budget.getMaxShuffles() > 0? Math.min(nbShuffles + roundSize, budget.getMaxShuffles()): nbShuffles + roundSize;
+            result.merge(invoke(new ShuffleTask(boxes, blocks, clusterArea, bestArea, seed, nbShuffles, to, getGrainSize(to - nbShuffles), needBest, deadline)));
+            nbShuffles = to;
+            if(budget.isExhausted(nbShuffles) || System.nanoTime() >= deadline)
+                break;
+            if(needBest && (result.best.getTotalUsedArea() >= areaUpperBound || budget.isStalled(nbShuffles - result.bestIndex - 1)))
+                break;
+        }
+        return result;
+    }
+
+    //A search started by a task of the pool, e.g. one cluster of generateLayers, forks its shuffles in the same pool so
+    //that idle workers steal them, instead of blocking a worker on a new submission
+    private <T> T invoke(ForkJoinTask<T> task){
+        return ForkJoinTask.getPool() == pool? task.invoke(): pool.invoke(task);
+    }
+
+    private int getGrainSize(int nbShuffles){
+        //a few tasks per worker so that idle workers can steal from slow ones
+        return Math.max(1, nbShuffles / (pool.getParallelism() * 4));
+    }
+
+    //Builds the layers of the shuffles in [from, to). Every shuffle uses its own random generator seeded from the
+    //search seed and the shuffle index, so the result does not depend on how the range is split over the workers.
+    //Past the deadline the remaining shuffles are skipped, except the first one of the search so that there is always
+    //a layer to return.
+    //When only the best layer is needed, a shuffle is abandoned as soon as its used area plus the area of the boxes not
+    //tried yet is below the best area found by any worker. Such a layer could not even tie with the best one, so the
+    //result is the same as without pruning.
+    //With blocks, a shuffle places blocks first and then the boxes left out in a random order, without pruning
+    private ShuffleResult runShuffles(Box[] boxes, BlockBuilder blocks, long clusterArea, AtomicInteger bestArea, long seed,
+                                      int from, int to, boolean needBest, long deadline){
+        ShuffleResult result = new ShuffleResult(needBest, boxes);
+        int[] sequence = new int[boxes.length];
+        int nbRun = 0, nbPruned = 0;
+        for(int i = from; i < to; i++){
+            if(i > 0 && System.nanoTime() >= deadline)
+                break;
+            nbRun++;
+            SplittableRandom random = new SplittableRandom(seed + i);
+            LayerState state = newLayer();
+            boolean pruned = false;
+            if(blocks != null){
+                List<Box> leftBoxes = blocks.placeBlocks(state, random);
+                for(int k = leftBoxes.size() - 1; k > 0; k--){
+                    Collections.swap(leftBoxes, k, random.nextInt(k + 1));
+                }
+                for(Box box: leftBoxes){
+                    placeBox(box, state, random);
+                }
+            }else{
+                for(int k = 0; k < sequence.length; k++){
+                    sequence[k] = k;
+                }
+                for(int k = sequence.length - 1; k > 0; k--){
+                    int j = random.nextInt(k + 1);
+                    int temp = sequence[k];
+                    sequence[k] = sequence[j];
+                    sequence[j] = temp;
+                }
+                long remainingArea = clusterArea;
+                //free spaces only shrink, so a box that does not fit now never fits later in this shuffle
+                for(int k = 0; k < sequence.length; k++){
+                    if(needBest && state.getTotalUsedArea() + Math.min(remainingArea, state.getTotalFreeArea()) < bestArea.get()){
+                        pruned = true;
                         break;
+                    }
+                    Box box = boxes[sequence[k]];
+                    remainingArea -= box.getBottomArea();
+                    placeBox(box, state, random);
                 }
             }
+            if(pruned){
+                nbPruned++;
+                continue;
+            }
+            freeSpaces.record(state.getNbFreeSpaces());
+            result.add(state, i);
+            if(needBest)
+                bestArea.accumulateAndGet(state.getTotalUsedArea(), Math::max);
+        }
+        layerShuffles.add(nbRun);
+        prunedShuffles.add(nbPruned);
+        return result;
+    }
+
+    //true if the box fits in some layer of the builder: in some orientation, and not heavier than a layer can be
+    public boolean canHold(Box box){
+        if(box.getWeight() > maxLayerWeight)
+            return false;
+        OrientationTable orientations = box.getOrientations();
+        for(int k = 0; k < orientations.size(); k++){
+            if(fits(orientations.getWidth(k), orientations.getDepth(k), orientations.getHeight(k)))
+                return true;
+        }
+        return false;
+    }
+
+    //true if the box standing as it is, turned either way, fits on the bottom of the pallet type and under its height
+    public boolean fitsStanding(Box box){
+        return fits(box.getWidth(), box.getDepth(), box.getHeight());
+    }
+
+    private boolean fits(int width, int depth, int height){
+        return height <= palletType.getHeight() && (width <= palletType.getWidth() && depth <= palletType.getDepth()
+                || depth <= palletType.getWidth() && width <= palletType.getDepth());
+    }
+
+    //Puts the box at the left front most free space that holds it, in a random orientation. The weight of the layer is a
+    //running total, a box that would make it too heavy is skipped
+    private void placeBox(Box box, LayerState state, SplittableRandom random){
+        if(state.getTotalWeight() + box.getWeight() > maxLayerWeight)
+            return;
+        PositionedRectangle p = findPlacementPosition(box.getWidth(), box.getDepth(), state);
+        if(p != null){
+            Cuboid new_dims = randomlyChooseHorizontalOrientation(p, box, random);
+            state.updateState(box, p.getPosition(), new_dims);
+        }
+    }
+
+    private class ShuffleTask extends RecursiveTask<ShuffleResult> {
+        private static final long serialVersionUID = 1L;
+        Box[] boxes;
+        BlockBuilder blocks;
+        long clusterArea;
+        AtomicInteger bestArea;
+        long seed;
+        int from, to, grainSize;
+        boolean needBest;
+        long deadline;
+
+        ShuffleTask(Box[] boxes, BlockBuilder blocks, long clusterArea, AtomicInteger bestArea, long seed, int from, int to,
+                    int grainSize, boolean needBest, long deadline){
+            this.boxes = boxes;
+            this.blocks = blocks;
+            this.clusterArea = clusterArea;
+            this.bestArea = bestArea;
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+            this.grainSize = grainSize;
+            this.needBest = needBest;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected ShuffleResult compute() {
+            if(to - from <= grainSize)
+                return runShuffles(boxes, blocks, clusterArea, bestArea, seed, from, to, needBest, deadline);
+            int middle = (from + to) >>> 1;
+            ShuffleTask left = new ShuffleTask(boxes, blocks, clusterArea, bestArea, seed, from, middle, grainSize, needBest, deadline);
+            ShuffleTask right = new ShuffleTask(boxes, blocks, clusterArea, bestArea, seed, middle, to, grainSize, needBest, deadline);
+            right.fork();
+            ShuffleResult result = left.compute();
+            result.merge(right.join());
+            return result;
+        }
+    }
+
+    //Partial result of a range of shuffles. Results are merged from left to right, so the kept layers are always
+    //those of the lowest shuffle index, as in a sequential run
+    private class ShuffleResult {
+        boolean needBest;
+        LayerState best;
+        //shuffle index of the best layer, -1 for the empty layer
+        int bestIndex = -1;
+        LayerPool layers;
+
+        ShuffleResult(boolean needBest, Box[] boxes){
+            this.needBest = needBest;
+            if(needBest)
+                best = newLayer();
+            else
+                layers = newLayerPool(boxes);
+        }
+
+        void add(LayerState state, int index){
             if(needBest){
-                if(layers.iterator().next().getTotalUsedArea() < state.getTotalUsedArea()) {
-                    layers.clear();
-                    layers.add(state);
+                if(best.getTotalUsedArea() < state.getTotalUsedArea()){
+                    best = state;
+                    bestIndex = index;
                 }
             }else{
                 //check if the layer is same to any layer generated before
                 layers.add(state);
             }
         }
-        return layers;
+
+        void merge(ShuffleResult right){
+            if(needBest)
+                add(right.best, right.bestIndex);
+            else
+                layers.addAll(right.layers);
+        }
+    }
+
+    //An empty pool for the layers of the boxes. When aggregating, boxes of the same standing key are interchangeable in
+    //it, so it keeps one layer per count of boxes of every type and geometry. The types are numbered in the order of
+    //the boxes, so every task of a search numbers them the same way
+    private LayerPool newLayerPool(Box[] boxes){
+        if(!aggregateBoxTypes)
+            return new LayerPool();
+        Map<List<Integer>, Integer> types = new HashMap<>();
+        List<Integer> typeCounts = new ArrayList<>();
+        int maxIndex = 0;
+        for(Box box: boxes){
+            maxIndex = Math.max(maxIndex, box.getIndex());
+        }
+        int[] boxTypes = new int[maxIndex + 1];
+        for(Box box: boxes){
+            int type = types.computeIfAbsent(BoxType.getStandingKey(box), key -> types.size());
+            if(type == typeCounts.size())
+                typeCounts.add(0);
+            typeCounts.set(type, typeCounts.get(type) + 1);
+            boxTypes[box.getIndex()] = type;
+        }
+        int[] typeOffsets = new int[typeCounts.size()];
+        for(int t = 1; t < typeOffsets.length; t++){
+            typeOffsets[t] = typeOffsets[t - 1] + typeCounts.get(t - 1);
+        }
+        return new LayerPool(boxTypes, typeOffsets);
     }
 
     public LayerState enhanceLayer(Box box, LayerState layer, String insertionType){
+        return enhanceLayer(box, layer, insertionType, SearchBudget.shuffles(20000));
+    }
+
+    public LayerState enhanceLayer(Box box, LayerState layer, String insertionType, SearchBudget budget){
+        if(layer.getTotalWeight() + box.getWeight() > maxLayerWeight)
+            return null;
         //try easy insertions
         //look for feasible free space to insert
         if(insertionType.equals("SIMPLE")){
-            PositionedRectangle p = findPlacementPosition(box.getBottomRectangle(), layer);
+            PositionedRectangle p = findPlacementPosition(box.getWidth(), box.getDepth(), layer);
             if(p!=null){
-                Cuboid new_dims = randomlyChooseHorizontalOrientation(p, box.getDims());
+                Cuboid new_dims = randomlyChooseHorizontalOrientation(p, box, random);
                 layer.updateState(box, p.getPosition(), new_dims);
                 return layer;
             }
         }
 
         if(insertionType.equals("SHUFFLE")){
-            List<Box> candidateBoxes = layer.getPackedBoxes();
-            candidateBoxes.add(box);
-            LayerState newLayer = generateBestLayer(candidateBoxes, 20000);
-            if(newLayer.getBoxIds().size() == candidateBoxes.size()){
-                return newLayer;
+            return repackLayer(box, layer, budget);
+        }
+        return null;
+    }
+
+    //Looks for an order in which the boxes of the layer plus the new box all fit in an empty layer.
+    //Every attempt is a what-if on one working layer: it stops at the first box that does not fit and is rolled back,
+    //so a failed attempt costs neither a new layer nor a full construction
+    public LayerState repackLayer(Box box, LayerState layer, SearchBudget budget){
+        List<Box> candidateBoxes = layer.getPackedBoxes();
+        candidateBoxes.add(box);
+        Box[] boxes = candidateBoxes.toArray(new Box[0]);
+        int candidateArea = 0;
+        for(Box b: boxes){
+            candidateArea += b.getBottomArea();
+        }
+        LayerState working = newLayer();
+        if(working.getTotalFreeArea() < candidateArea)
+            return null;
+        int[] sequence = new int[boxes.length];
+        for(int k = 0; k < sequence.length; k++){
+            sequence[k] = k;
+        }
+        long deadline = budget.getDeadline(System.nanoTime());
+        int i = 0;
+        for(; !budget.isExhausted(i) && System.nanoTime() < deadline; i++){
+            for(int k = sequence.length - 1; k > 0; k--){
+                int j = random.nextInt(k + 1);
+                int temp = sequence[k];
+                sequence[k] = sequence[j];
+                sequence[j] = temp;
+            }
+            LayerState.Checkpoint checkpoint = working.mark();
+            boolean allPlaced = true;
+            for(int k = 0; k < sequence.length && allPlaced; k++){
+                Box b = boxes[sequence[k]];
+                PositionedRectangle p = findPlacementPosition(b.getWidth(), b.getDepth(), working);
+                if(p == null){
+                    allPlaced = false;
+                }else{
+                    Cuboid new_dims = randomlyChooseHorizontalOrientation(p, b, random);
+                    working.updateState(b, p.getPosition(), new_dims);
+                }
             }
+            if(allPlaced){
+                working.commit(checkpoint);
+                insertionShuffles.add(i + 1);
+                return working;
+            }
+            working.rollback(checkpoint);
         }
+        insertionShuffles.add(i);
         return null;
     }
 
     public LayerState generateBestLayer(List<Box> sameHeightBoxes, int nbShuffles){
-        return this.generateLayers(sameHeightBoxes, nbShuffles).get(0);
+        return generateBestLayer(sameHeightBoxes, SearchBudget.shuffles(nbShuffles));
+    }
+
+    public LayerState generateBestLayer(List<Box> sameHeightBoxes, SearchBudget budget){
+        if(aggregateBoxTypes)
+            sameHeightBoxes = getRepresentatives(sameHeightBoxes);
+        if(layerCache == null)
+            return constructLayers(sameHeightBoxes, budget, true).iterator().next();
+        List<Box> boxes = sameHeightBoxes;
+        boolean[] searched = {false};
+        LayerState best = layerCache.get(boxes, palletType.getWidth(), palletType.getDepth(), maxLayerWeight, () -> {
+            searched[0] = true;
+            return constructLayers(boxes, budget, true).iterator().next();
+        });
+        //a layer searched by another order at the same time counts as a hit
+        metrics.increment(searched[0]? "layer_cache_misses_total": "layer_cache_hits_total");
+        return best;
     }
 
     public List<LayerState> generateLayers(List<Box> sameHeightBoxes, int nbShuffles){
-        Set<LayerState> layers = constructLayers(sameHeightBoxes, nbShuffles, false);
-        return layers.stream().sorted(Comparator.comparing(LayerState::getTotalUsedArea).reversed()).collect(Collectors.toList());
+        return generateLayers(sameHeightBoxes, SearchBudget.shuffles(nbShuffles));
+    }
+
+    public List<LayerState> generateLayers(List<Box> sameHeightBoxes, SearchBudget budget){
+        return generateLayers(sameHeightBoxes, budget, random.nextLong());
+    }
+
+    private List<LayerState> generateLayers(List<Box> sameHeightBoxes, SearchBudget budget, long seed){
+        LayerPool layers = search(sameHeightBoxes, budget, false, seed).layers;
+        if(dropDominatedLayers || aggregateBoxTypes)
+            layers.removeDominated();
+        long maxLayers = maxLayersPerCluster > 0 && !aggregateBoxTypes? maxLayersPerCluster: Long.MAX_VALUE;
+        return layers.getLayers().stream().sorted(Comparator.comparing(LayerState::getTotalUsedArea).reversed())
+                .limit(maxLayers).collect(Collectors.toList());
     }
 
     public Map<Integer, List<LayerState>> generateLayers(int nbShuffles, double clusterSizeAsPercentageThreshold){
-        Map<Integer, List<Box>> boxClusters = cluster.getClusters(boxesToPack);
-        List<List<Box>> clusterLists = boxClusters.values().stream().collect(Collectors.toList());
-        //TODO filter the clusters so that a few large clusters suffice to cover all boxes
-        //order the clusters in decreasing order of number of boxes
-        Comparator<List<Box>> comparator = Comparator.comparing(List::size);
-        Collections.sort(clusterLists, comparator.reversed());
-        Set<String> boxIds = new HashSet(boxesToPack.keySet());
-        Set<String> coveredBoxIdsSoFar = new HashSet<>();
-        Set<Integer> clusterKeysToRemove = new HashSet<>();
-        Set<Integer> clusterKeysToKeep = new HashSet<>();
-        for(List<Box> cluster: clusterLists){
-            Set<String> boxesInCluster = cluster.stream().map(box->box.getId()).collect(Collectors.toSet());
-            Set<String> intersection = new HashSet<String>(boxIds); // use the copy constructor
-            intersection.retainAll(boxesInCluster);
-            if(intersection.size() > 0){
-                coveredBoxIdsSoFar.addAll(boxesInCluster);
-                boxIds.removeAll(boxesInCluster);
-                clusterKeysToKeep.add(cluster.get(0).getHeight());
-            }else{
-                // the cluster should contain boxes already covered by previous clusters
-                // But the cluster is large enough, it may still generate good layers, so keep it
-                // Only remove if the cluster is not large enough
-                if(boxesInCluster.size() < boxesToPack.size() * clusterSizeAsPercentageThreshold){
-                    clusterKeysToRemove.add(cluster.get(0).getHeight());
-                }else{
+        return generateLayers(SearchBudget.shuffles(nbShuffles), clusterSizeAsPercentageThreshold);
+    }
+
+    public Map<Integer, List<LayerState>> generateLayers(SearchBudget budget, double clusterSizeAsPercentageThreshold){
+        PackingMetrics.Phase clustering = metrics.startPhase("clustering");
+        Map<Integer, List<Box>> boxClusters;
+        try {
+            Map<String, Box> boxesToCluster = aggregateBoxTypes? getRepresentatives(boxesToPack): boxesToPack;
+            boxClusters = cluster.getClusters(boxesToCluster);
+            List<List<Box>> clusterLists = boxClusters.values().stream().collect(Collectors.toList());
+            //TODO filter the clusters so that a few large clusters suffice to cover all boxes
+            //order the clusters in decreasing order of number of boxes
+            Comparator<List<Box>> comparator = Comparator.comparing(List::size);
+            Collections.sort(clusterLists, comparator.reversed());
+            BitSet uncoveredBoxes = new BitSet();
+            for(Box box: boxesToCluster.values()){
+                uncoveredBoxes.set(box.getIndex());
+            }
+            Set<Integer> clusterKeysToRemove = new HashSet<>();
+            Set<Integer> clusterKeysToKeep = new HashSet<>();
+            for(List<Box> cluster: clusterLists){
+                BitSet boxesInCluster = new BitSet();
+                for(Box box: cluster){
+                    boxesInCluster.set(box.getIndex());
+                }
+                if(boxesInCluster.intersects(uncoveredBoxes)){
+                    uncoveredBoxes.andNot(boxesInCluster);
                     clusterKeysToKeep.add(cluster.get(0).getHeight());
+                }else{
+                    // the cluster should contain boxes already covered by previous clusters
+                    // But the cluster is large enough, it may still generate good layers, so keep it
+                    // Only remove if the cluster is not large enough
+                    if(boxesInCluster.cardinality() < boxesToCluster.size() * clusterSizeAsPercentageThreshold){
+                        clusterKeysToRemove.add(cluster.get(0).getHeight());
+                    }else{
+                        clusterKeysToKeep.add(cluster.get(0).getHeight());
+                    }
                 }
             }
-        }
 
-        boxClusters.keySet().removeAll(clusterKeysToRemove);
-        Map<Integer,List<LayerState>> layersByHeight = boxClusters.entrySet().stream()
-                .collect(Collectors.toMap(cluster->cluster.getKey(), cluster ->generateLayers(cluster.getValue(), nbShuffles)));
+            boxClusters.keySet().removeAll(clusterKeysToRemove);
+        } finally {
+            clustering.close();
+        }
+        //the clusters are searched concurrently, each search splitting its shuffles over the workers. The seeds are drawn
+        //in height order beforehand, so the layers do not depend on the order the clusters finish in
+        List<Integer> heights = new ArrayList<>(boxClusters.keySet());
+        Collections.sort(heights);
+        List<ForkJoinTask<List<LayerState>>> clusterTasks = new ArrayList<>();
+        for(Integer height: heights){
+            List<Box> clusterBoxes = aggregateBoxTypes? getRepresentatives(boxClusters.get(height)): boxClusters.get(height);
+            long seed = random.nextLong();
+            clusterTasks.add(ForkJoinTask.adapt(() -> generateLayers(clusterBoxes, budget, seed)));
+        }
+        PackingMetrics.Phase generation = metrics.startPhase("layer_generation");
+        try {
+            invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(clusterTasks)));
+        } finally {
+            generation.close();
+        }
+        Map<Integer,List<LayerState>> layersByHeight = new HashMap<>();
+        for(int i = 0; i < heights.size(); i++){
+            layersByHeight.put(heights.get(i), clusterTasks.get(i).join());
+        }
         return layersByHeight;
     }
 
-    public PositionedRectangle findPlacementPosition(Rectangle boxBottom, LayerState state){
-        ArrayList<PositionedRectangle> feasibleFreeSpaces = state.getFeasibleFreeSpaces(boxBottom);
-        if(feasibleFreeSpaces.isEmpty())
-            return null;
-        //This comparator gives priority to position towards left front of the plane
-        feasibleFreeSpaces.sort(new Comparator<PositionedRectangle>() {
-            @Override
-            public int compare(PositionedRectangle o1, PositionedRectangle o2) {
-                if(o1.getXLeft() < o2.getXLeft())
-                    return -1;
-                else if(o1.getXLeft() > o2.getXLeft())
-                    return 1;
-                if(o1.getYFront() < o2.getYFront())
-                    return -1;
-                else if(o1.getYFront() > o2.getYFront())
-                    return 1;
-                return 0;
+    //The first boxes of every box type, as many as a layer of the builder could hold lying on their smallest facet.
+    //Boxes of the same type are interchangeable, so the layers of these boxes are the layers of all of them up to the
+    //ids of their boxes
+    public Map<String, Box> getRepresentatives(Map<String, Box> boxes){
+        Map<String, Box> representatives = new LinkedHashMap<>();
+        for(BoxType type: BoxType.group(boxes.values())){
+            for(Box box: type.getBoxes().subList(0, type.getMaxPerLayer(palletType.getBottomArea(), maxLayerWeight))){
+                representatives.put(box.getId(), box);
             }
-        });
-
-        return feasibleFreeSpaces.get(0);
+        }
+        return representatives;
     }
 
-    public Cuboid randomlyChooseHorizontalOrientation(PositionedRectangle pr, Cuboid originalOrientation){
-        ArrayList<Cuboid> feasibleOrientations = new ArrayList<>();
-        if(originalOrientation.getWidth() <= pr.getWidth() && originalOrientation.getDepth() <= pr.getDepth()){
-            Cuboid tempOrientation = originalOrientation.rotate(0,0,0);
-            feasibleOrientations.add(tempOrientation);
+    //The boxes of a cluster of same height boxes, in their order, but at most as many of each box type as fit side by
+    //side in a layer of the builder
+    public List<Box> getRepresentatives(List<Box> sameHeightBoxes){
+        Map<List<Integer>, Integer> counts = new HashMap<>();
+        List<Box> representatives = new ArrayList<>();
+        for(Box box: sameHeightBoxes){
+            List<Integer> type = BoxType.getStandingKey(box);
+            int maxCount = Math.min(palletType.getBottomArea() / box.getBottomArea(),
+                    box.getWeight() == 0? Integer.MAX_VALUE: maxLayerWeight / box.getWeight());
+            if(counts.merge(type, 1, Integer::sum) <= maxCount)
+                representatives.add(box);
         }
-        if(originalOrientation.getWidth() <= pr.getDepth() && originalOrientation.getDepth() <= pr.getWidth()){
-            Cuboid tempOrientation = originalOrientation.rotate(0,0,90);
-            feasibleOrientations.add(tempOrientation);
+        return representatives;
+    }
+
+    //This gives priority to position towards left front of the plane
+    public PositionedRectangle findPlacementPosition(Rectangle boxBottom, LayerState state){
+        return findPlacementPosition(boxBottom.getWidth(), boxBottom.getDepth(), state);
+    }
+
+    public PositionedRectangle findPlacementPosition(int width, int depth, LayerState state){
+        int index = state.findFeasibleFreeSpace(width, depth);
+        if(index < 0)
+            return null;
+        return state.getFreeSpace(index);
+    }
+
+    //Returns one of the orientations of the cuboid with the same height that fit in the free space, they are shared
+    //between the cuboids of the same dimensions. A square bottom only has one such orientation
+    public Cuboid randomlyChooseHorizontalOrientation(PositionedRectangle pr, Cuboid originalOrientation, SplittableRandom random){
+        OrientationTable orientations = originalOrientation.getOrientations();
+        int[] feasibleOrientations = new int[2];
+        int nbFeasibleOrientations = 0;
+        for(int k = 0; k < orientations.getNbHorizontalOrientations(); k++){
+            if(orientations.getWidth(k) <= pr.getWidth() && orientations.getDepth(k) <= pr.getDepth())
+                feasibleOrientations[nbFeasibleOrientations++] = k;
         }
 
-        int randint = (int)(Math.random()*feasibleOrientations.size());
-        Cuboid chosenOrientation = feasibleOrientations.get(randint);
+        int randint = random.nextInt(nbFeasibleOrientations);
+        Cuboid chosenOrientation = orientations.getOrientation(feasibleOrientations[randint]);
         return chosenOrientation;
     }
 
@@ -3,16 +3,21 @@ package main;
 import main.PackingObjects.Box;
 import main.PackingObjects.Pallet;
 import main.utils.InputReader;
+import main.utils.PackingConfiguration;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 
 public class MainClass {
-    public static void main(String[] args)
+    //the arguments override the properties, e.g. inputManifest=orders.txt layerShuffles=1000 palletType=US or
+    //--config=site.properties
+    public static void main(String[] args) throws IOException
     {
+        PackingConfiguration configuration = PackingConfiguration.load(args);
         InputReader reader = new InputReader();
-        Map<String, Box> unpackedBoxes = reader.readData("src\\main\\resources\\test_instance.txt");
+        Map<String, Box> unpackedBoxes = reader.readData(configuration.getInputManifest());
 
         ArrayList<Pallet> pallets = new ArrayList<>();
 
@@ -20,9 +25,9 @@ public class MainClass {
         //List<Box> sameHeightBoxes = new BoxCluster().findSameHeightBoxes(unpackedBoxes, 400);
         //PalletBuilder builder = new PalletBuilder(sameHeightBoxes.stream().collect(Collectors.toMap(box->box.getId(), box->box)));
         /***END**/
-        PalletBuilder builder = new PalletBuilder(unpackedBoxes);
+        PalletBuilder builder = new PalletBuilder(unpackedBoxes, configuration);
         try {
-            List<Pallet> palletsTest = builder.buildPalletsGreedy();
+            builder.pack();
             //Pallet pallet = builder.buildPallet(true);
             /*if(pallet != null){
                 pallets.add(pallet);
@@ -30,6 +35,8 @@ public class MainClass {
         } catch (Exception e) {
             e.printStackTrace();
         }
+        if(configuration.getMetricsFile() != null)
+            builder.getMetrics().write(Paths.get(configuration.getMetricsFile()), configuration.getMetricsFormat());
         //TODO: how to recursively build pallets until all boxes are packed
         
     }
@@ -0,0 +1,85 @@
+package main.Metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+//Lock-free histogram of non-negative long values, e.g. durations in nanoseconds, with buckets as in HdrHistogram:
+//the values below 16 have a bucket each, and every power of two above is split into 16 buckets of the same width, so a
+//bucket is at most 1/16 of its values wide whatever their magnitude. Recording is one bucket increment plus the
+//count, sum and max, so it can be called by concurrent workers
+public class Histogram {
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int NB_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    AtomicLongArray buckets = new AtomicLongArray(NB_BUCKETS);
+    LongAdder count = new LongAdder();
+    LongAdder sum = new LongAdder();
+    LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    //negative values are recorded as 0
+    public void record(long value){
+        if(value < 0)
+            value = 0;
+        buckets.incrementAndGet(getBucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = getCount();
+        return n == 0? 0: (double) getSum() / n;
+    }
+
+    //The upper bound of the bucket holding the value of the given rank, quantile in [0, 1]. The buckets are read one
+    //by one while other threads may record, so the result is only exact when nothing is recorded meanwhile
+    public long getQuantile(double quantile){
+        long[] counts = new long[NB_BUCKETS];
+        long total = 0;
+        for(int b = 0; b < NB_BUCKETS; b++){
+            counts[b] = buckets.get(b);
+            total += counts[b];
+        }
+        if(total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for(int b = 0; b < NB_BUCKETS; b++){
+            seen += counts[b];
+            if(seen >= rank)
+                return Math.min(getBucketUpperBound(b), getMax());
+        }
+        return getMax();
+    }
+
+    static int getBucket(long value){
+        if(value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long getBucketUpperBound(int bucket){
+        if(bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lower + width - 1;
+    }
+}
@@ -0,0 +1,190 @@
+package main.Metrics;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//Counters, gauges and histograms of a packing run, exported as JSON or in the Prometheus text format.
+//A metric name may carry Prometheus labels, e.g. insertion_attempts_total{type="SIMPLE"}, and every metric is exported
+//with the packing_ prefix. Counters and histograms are lock-free, so the workers record into them directly; hot loops
+//should keep the LongAdder or Histogram instead of looking it up by name every time.
+//The phases of a run are timed with startPhase, closed in a finally block, into the phase_nanos histogram of the phase
+public class PackingMetrics {
+    static final String PREFIX = "packing_";
+    static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    static final String[] QUANTILE_KEYS = {"p50", "p90", "p99", "p999"};
+
+    ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    ConcurrentHashMap<String, Double> gauges = new ConcurrentHashMap<>();
+    ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    //Time of a phase, recorded when closed
+    public class Phase implements AutoCloseable {
+        Histogram histogram;
+        long start;
+
+        Phase(Histogram histogram){
+            this.histogram = histogram;
+            this.start = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    public LongAdder counter(String name){
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    public Histogram histogram(String name){
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    public void increment(String name){
+        counter(name).increment();
+    }
+
+    public void add(String name, long value){
+        counter(name).add(value);
+    }
+
+    public void record(String name, long value){
+        histogram(name).record(value);
+    }
+
+    public void setGauge(String name, double value){
+        gauges.put(name, value);
+    }
+
+    public Phase startPhase(String phase){
+        return new Phase(histogram(getPhaseMetric(phase)));
+    }
+
+    public long getCount(String name){
+        LongAdder counter = counters.get(name);
+        return counter == null? 0: counter.sum();
+    }
+
+    public Double getGauge(String name){
+        return gauges.get(name);
+    }
+
+    //Total time spent in the phase, over all the times it was run
+    public double getPhaseSeconds(String phase){
+        Histogram histogram = histograms.get(getPhaseMetric(phase));
+        return histogram == null? 0: histogram.getSum() / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    static String getPhaseMetric(String phase){
+        return "phase_nanos{phase=\"" + phase + "\"}";
+    }
+
+    //format is JSON or PROMETHEUS
+    public void write(Path file, String format) throws IOException {
+        if(!format.equals("JSON") && !format.equals("PROMETHEUS"))
+            throw new IllegalArgumentException("Unknown metrics format " + format);
+        if(file.getParent() != null)
+            Files.createDirectories(file.getParent());
+        try(Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8))){
+            if(format.equals("JSON"))
+                writeJson(writer);
+            else
+                writePrometheus(writer);
+        }
+    }
+
+    //{"counters": {name: value}, "gauges": {name: value}, "histograms": {name: {"count", "sum", "mean", "max",
+    //"p50", "p90", "p99", "p999"}}}, the names sorted
+    public void writeJson(Writer writer) throws IOException {
+        writer.append("{\n  \"counters\": {");
+        String separator = "\n";
+        for(Map.Entry<String, LongAdder> counter: new TreeMap<>(counters).entrySet()){
+            writer.append(separator).append("    ").append(quote(counter.getKey())).append(": ")
+                    .append(String.valueOf(counter.getValue().sum()));
+            separator = ",\n";
+        }
+        writer.append("\n  },\n  \"gauges\": {");
+        separator = "\n";
+        for(Map.Entry<String, Double> gauge: new TreeMap<>(gauges).entrySet()){
+            writer.append(separator).append("    ").append(quote(gauge.getKey())).append(": ").append(formatDouble(gauge.getValue()));
+            separator = ",\n";
+        }
+        writer.append("\n  },\n  \"histograms\": {");
+        separator = "\n";
+        for(Map.Entry<String, Histogram> entry: new TreeMap<>(histograms).entrySet()){
+            Histogram histogram = entry.getValue();
+            writer.append(separator).append("    ").append(quote(entry.getKey())).append(": {\"count\": ")
+                    .append(String.valueOf(histogram.getCount())).append(", \"sum\": ").append(String.valueOf(histogram.getSum()))
+                    .append(", \"mean\": ").append(formatDouble(histogram.getMean()))
+                    .append(", \"max\": ").append(String.valueOf(histogram.getMax()));
+            for(int q = 0; q < QUANTILES.length; q++){
+                writer.append(", \"").append(QUANTILE_KEYS[q]).append("\": ")
+                        .append(String.valueOf(histogram.getQuantile(QUANTILES[q])));
+            }
+            writer.append("}");
+            separator = ",\n";
+        }
+        writer.append("\n  }\n}\n");
+    }
+
+    //Counters and gauges as such, histograms as summaries with their quantiles, _sum and _count
+    public void writePrometheus(Writer writer) throws IOException {
+        Set<String> typed = new HashSet<>();
+        for(Map.Entry<String, LongAdder> counter: new TreeMap<>(counters).entrySet()){
+            writeType(writer, typed, counter.getKey(), "counter");
+            writer.append(PREFIX).append(counter.getKey()).append(' ').append(String.valueOf(counter.getValue().sum())).append('\n');
+        }
+        for(Map.Entry<String, Double> gauge: new TreeMap<>(gauges).entrySet()){
+            writeType(writer, typed, gauge.getKey(), "gauge");
+            writer.append(PREFIX).append(gauge.getKey()).append(' ').append(formatDouble(gauge.getValue())).append('\n');
+        }
+        for(Map.Entry<String, Histogram> entry: new TreeMap<>(histograms).entrySet()){
+            String name = getBaseName(entry.getKey());
+            String labels = getLabels(entry.getKey());
+            Histogram histogram = entry.getValue();
+            writeType(writer, typed, name, "summary");
+            for(double quantile: QUANTILES){
+                writer.append(PREFIX).append(name).append('{').append(labels).append(labels.isEmpty()? "": ",")
+                        .append("quantile=\"").append(String.valueOf(quantile)).append("\"} ")
+                        .append(String.valueOf(histogram.getQuantile(quantile))).append('\n');
+            }
+            String labelSet = labels.isEmpty()? "": "{" + labels + "}";
+            writer.append(PREFIX).append(name).append("_sum").append(labelSet).append(' ').append(String.valueOf(histogram.getSum())).append('\n');
+            writer.append(PREFIX).append(name).append("_count").append(labelSet).append(' ').append(String.valueOf(histogram.getCount())).append('\n');
+        }
+    }
+
+    //one TYPE line per metric, before its first sample
+    private static void writeType(Writer writer, Set<String> typed, String metric, String type) throws IOException {
+        String name = getBaseName(metric);
+        if(typed.add(name))
+            writer.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String getBaseName(String metric){
+        int brace = metric.indexOf('{');
+        return brace < 0? metric: metric.substring(0, brace);
+    }
+
+    private static String getLabels(String metric){
+        int brace = metric.indexOf('{');
+        return brace < 0? "": metric.substring(brace + 1, metric.length() - 1);
+    }
+
+    private static String quote(String s){
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String formatDouble(double value){
+        if(Double.isNaN(value) || Double.isInfinite(value))
+            return "0";
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,213 @@
+package main;
+
+import main.PackingObjects.Box;
+import main.PackingObjects.Cuboid;
+import main.PackingObjects.FreeSpace3D;
+import main.PackingObjects.OrientationTable;
+import main.PackingObjects.Pallet;
+import main.PackingObjects.PalletType;
+import main.PlacementObjects.Placement;
+import main.PlacementObjects.Vector3D;
+import main.utils.FreeSpaceComparator;
+import main.utils.PackingConfiguration;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+//Packs boxes as they arrive, e.g. from a conveyor, instead of from a complete manifest.
+//Offered boxes wait in a lookahead buffer. When the buffer is full, one decision is made: the buffered box with the
+//lowest free space over all open pallets, in FreeSpaceComparator order, that keeps the constraints of the pallet is
+//placed there. When no buffered box fits
+//in any open pallet, the oldest one starts a new pallet, and the oldest open pallet is closed if there are already
+//maxOpenPallets of them.
+//A decision stops looking for candidates at its time limit, and without one by then the oldest box starts a new pallet
+//as if none fitted, so its latency is bounded by the limit plus one free space query and the placement. The latencies
+//are recorded in getDecisionLatencies
+public class OnlinePalletBuilder {
+    int lookahead;
+    int maxOpenPallets;
+    long decisionTimeLimitNanos;
+    PalletType palletType;
+    PackingConfiguration configuration;
+    ArrayDeque<Box> buffer = new ArrayDeque<>();
+    ArrayList<Pallet> openPallets = new ArrayList<>();
+    ArrayList<Pallet> closedPallets = new ArrayList<>();
+    FreeSpaceComparator freeSpaceComparator = new FreeSpaceComparator();
+    LongSummaryStatistics decisionLatencies = new LongSummaryStatistics();
+
+    //What to do with a box: put it in the given open pallet with the given orientation and position.
+    //newPallet is true if the pallet was opened for this box
+    public static class Decision {
+        Placement placement;
+        Pallet pallet;
+        boolean newPallet;
+        long latencyNanos;
+
+        Decision(Placement placement, Pallet pallet, boolean newPallet, long latencyNanos){
+            this.placement = placement;
+            this.pallet = pallet;
+            this.newPallet = newPallet;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public Box getBox() {
+            return placement.getBox();
+        }
+
+        public Placement getPlacement() {
+            return placement;
+        }
+
+        public Pallet getPallet() {
+            return pallet;
+        }
+
+        public boolean isNewPallet() {
+            return newPallet;
+        }
+
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+    }
+
+    public OnlinePalletBuilder(){
+        this(PackingConfiguration.getDefault());
+    }
+
+    public OnlinePalletBuilder(PackingConfiguration configuration){
+        this(configuration, configuration.getPalletType(), configuration.getOnlineLookahead(),
+                configuration.getOnlineMaxOpenPallets(), configuration.getOnlineDecisionTimeLimitMs());
+    }
+
+    public OnlinePalletBuilder(int lookahead, int maxOpenPallets, long decisionTimeLimitMs){
+        this(PackingConfiguration.getDefault(), PackingConfiguration.getDefault().getPalletType(), lookahead, maxOpenPallets,
+                decisionTimeLimitMs);
+    }
+
+    //decisionTimeLimitMs <= 0 lets every decision look at all the candidates
+    public OnlinePalletBuilder(PackingConfiguration configuration, PalletType palletType, int lookahead, int maxOpenPallets,
+                               long decisionTimeLimitMs){
+        if(lookahead < 1 || maxOpenPallets < 1)
+            throw new IllegalArgumentException("The lookahead and the number of open pallets must be at least 1");
+        this.configuration = configuration;
+        this.palletType = palletType;
+        this.lookahead = lookahead;
+        this.maxOpenPallets = maxOpenPallets;
+        this.decisionTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(decisionTimeLimitMs);
+    }
+
+    //Adds the box to the lookahead buffer and returns the decision made to make room in it, or null while the buffer
+    //is not full
+    public Decision offer(Box box) throws Exception {
+        if(!new Cuboid(palletType.getWidth(), palletType.getDepth(), palletType.getHeight()).accomodate(box)
+                || box.getWeight() > palletType.getCapacity())
+            throw new IllegalArgumentException("Box " + box.getId() + " does not fit in an empty pallet");
+        buffer.addLast(box);
+        if(buffer.size() < lookahead)
+            return null;
+        return decide();
+    }
+
+    //Places all the buffered boxes, e.g. at the end of a shift
+    public List<Decision> flush() throws Exception {
+        List<Decision> decisions = new ArrayList<>();
+        while(!buffer.isEmpty()){
+            decisions.add(decide());
+        }
+        return decisions;
+    }
+
+    private Decision decide() throws Exception {
+        long start = System.nanoTime();
+        long deadline = decisionTimeLimitNanos > 0? start + decisionTimeLimitNanos: Long.MAX_VALUE;
+        Box bestBox = null;
+        Pallet bestPallet = null;
+        FreeSpace3D bestSpace = null;
+        search:
+        for(Box box: buffer){
+            for(Pallet pallet: openPallets){
+                if(System.nanoTime() >= deadline)
+                    break search;
+                if(!pallet.hasEnoughWeightCapacity(box.getWeight()))
+                    continue;
+                FreeSpace3D fs = findFreeSpace(box, pallet);
+                if(fs != null && (bestSpace == null || freeSpaceComparator.compare(fs, bestSpace) < 0)){
+                    bestBox = box;
+                    bestPallet = pallet;
+                    bestSpace = fs;
+                }
+            }
+        }
+        boolean newPallet = bestBox == null;
+        if(newPallet){
+            bestBox = buffer.peekFirst();
+            bestPallet = openPallet();
+            bestSpace = bestPallet.findFeasibleFreeSpace(bestBox);
+        }
+        buffer.remove(bestBox);
+        //on the floor of a new pallet every orientation that fits keeps the constraints
+        Cuboid orientation = chooseOrientation(bestBox, bestSpace, bestPallet);
+        Vector3D position = new Vector3D(bestSpace.getPosition());
+        bestBox.placeTheBox(position, orientation);
+        bestPallet.placeBox(bestBox);
+        long latency = System.nanoTime() - start;
+        decisionLatencies.accept(latency);
+        return new Decision(new Placement(bestBox, position, orientation), bestPallet, newPallet, latency);
+    }
+
+    private Pallet openPallet(){
+        if(openPallets.size() >= maxOpenPallets)
+            closedPallets.add(openPallets.remove(0));
+        Pallet pallet = palletType.createPallet("Pallet" + (openPallets.size() + closedPallets.size()), configuration);
+        openPallets.add(pallet);
+        return pallet;
+    }
+
+    //The first free space in FreeSpaceComparator order where the box fits in an orientation that keeps the constraints
+    //of the pallet. The other spaces are only looked at when the first one breaks them
+    private FreeSpace3D findFreeSpace(Box box, Pallet pallet){
+        FreeSpace3D first = pallet.findFeasibleFreeSpace(box);
+        if(first == null || chooseOrientation(box, first, pallet) != null)
+            return first;
+        for(FreeSpace3D fs: pallet.getFeasibleFreeSpaces(box)){
+            if(fs != first && chooseOrientation(box, fs, pallet) != null)
+                return fs;
+        }
+        return null;
+    }
+
+    //The lowest orientation that fits and keeps the constraints of the pallet, so that the box lies on its
+    //largest facets when it can. Null if there is none
+    private Cuboid chooseOrientation(Box box, FreeSpace3D fs, Pallet pallet){
+        OrientationTable orientations = box.getOrientations();
+        int best = -1;
+        for(int k = 0; k < orientations.size(); k++){
+            if(fs.dimensionFits(orientations.getWidth(k), orientations.getDepth(k), orientations.getHeight(k))
+                    && (best < 0 || orientations.getHeight(k) < orientations.getHeight(best))
+                    && pallet.isFeasible(box, fs.getPosition(), orientations.getOrientation(k)))
+                best = k;
+        }
+        return best < 0? null: orientations.getOrientation(best);
+    }
+
+    public List<Pallet> getOpenPallets() {
+        return openPallets;
+    }
+
+    //All the pallets, closed ones first
+    public List<Pallet> getPallets() {
+        List<Pallet> pallets = new ArrayList<>(closedPallets);
+        pallets.addAll(openPallets);
+        return pallets;
+    }
+
+    public int getNbBufferedBoxes() {
+        return buffer.size();
+    }
+
+    //Count, min, max and average of the decision latencies in nanoseconds
+    public LongSummaryStatistics getDecisionLatencies() {
+        return decisionLatencies;
+    }
+}
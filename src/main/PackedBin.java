@@ -0,0 +1,33 @@
+package main;
+
+import main.PackingObjects.PalletType;
+import main.State.LayerState;
+
+import java.util.List;
+
+//Layers stacked from the bottom in one pallet or container of the given type, see PalletBuilder.buildFleet
+public class PackedBin {
+    PalletType palletType;
+    List<LayerState> layers;
+
+    public PackedBin(PalletType palletType, List<LayerState> layers){
+        this.palletType = palletType;
+        this.layers = layers;
+    }
+
+    public PalletType getPalletType() {
+        return palletType;
+    }
+
+    public List<LayerState> getLayers() {
+        return layers;
+    }
+
+    public int getHeight(){
+        return layers.stream().mapToInt(LayerState::getLayerHeight).sum();
+    }
+
+    public int getWeight(){
+        return layers.stream().mapToInt(LayerState::getTotalWeight).sum();
+    }
+}
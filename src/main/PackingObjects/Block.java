@@ -0,0 +1,56 @@
+package main.PackingObjects;
+
+//A grid of nbX by nbY boxes of the same type lying in the same orientation, placed in a layer as one rectangle.
+//Turned a quarter, it is the grid of nbY by nbX boxes in the other horizontal orientation of the boxes
+public class Block {
+    Cuboid orientation;
+    //the same as orientation for a square bottom
+    Cuboid turnedOrientation;
+    int nbX;
+    int nbY;
+    long weight;
+
+    public Block(OrientationTable orientations, int nbX, int nbY, int boxWeight){
+        this.orientation = orientations.getOrientation(0);
+        this.turnedOrientation = orientations.getOrientation(orientations.getNbHorizontalOrientations() - 1);
+        this.nbX = nbX;
+        this.nbY = nbY;
+        this.weight = (long) boxWeight * nbX * nbY;
+    }
+
+    public Cuboid getOrientation() {
+        return orientation;
+    }
+
+    public Cuboid getTurnedOrientation() {
+        return turnedOrientation;
+    }
+
+    public int getNbX() {
+        return nbX;
+    }
+
+    public int getNbY() {
+        return nbY;
+    }
+
+    public int getNbBoxes(){
+        return nbX * nbY;
+    }
+
+    public int getWidth(){
+        return nbX * orientation.getWidth();
+    }
+
+    public int getDepth(){
+        return nbY * orientation.getDepth();
+    }
+
+    public int getBottomArea(){
+        return getWidth() * getDepth();
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+}
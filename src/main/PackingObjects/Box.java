@@ -4,21 +4,42 @@ package main.PackingObjects;
 import main.PlacementObjects.Vector3D;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class Box extends PositionedCuboid {
+    //what a box needs under it, see main.Constraints.SupportConstraint
+    public static final String[] SUPPORT_TYPES = {"FULL", "ALL_EDGES", "CORNERS", "SHORT_EDGES"};
+    //for boxes that do not limit the weight on them
+    public static final int UNLIMITED_LOAD_CAPACITY = Integer.MAX_VALUE;
     String id;
+    //dense number of the box given at loading, the position of the box in the box bitsets
+    int index;
     int weight;
+    //pressure the top of the box can bear in kg/m^2, so loadCapacity * top area in mm^2 / 1000 grams
+    int loadCapacity;
+    String supportType;
     ArrayList<Box> aboveBoxes = new ArrayList<Box>();
     ArrayList<Box> underneathBoxes = new ArrayList<Box>();
 
-    public Box(String id, int width, int depth, int height, int weight, Vector3D position) {
+    public Box(String id, int index, int width, int depth, int height, int weight, Vector3D position) {
+        this(id, index, width, depth, height, weight, UNLIMITED_LOAD_CAPACITY, "FULL", position);
+    }
+
+    public Box(String id, int index, int width, int depth, int height, int weight, int loadCapacity, String supportType,
+               Vector3D position) {
         super(width, depth, height, position);
+        if(!Arrays.asList(SUPPORT_TYPES).contains(supportType))
+            throw new IllegalArgumentException("Unknown support type " + supportType + " for box " + id);
         this.weight = weight;
         this.id = id;
+        this.index = index;
+        this.loadCapacity = loadCapacity;
+        this.supportType = supportType;
     }
 
     public Box(Box box){
-        this(box.getId(), box.getWidth(), box.getDepth(), box.getHeight(), box.getWeight(), box.getPosition());
+        this(box.getId(), box.getIndex(), box.getWidth(), box.getDepth(), box.getHeight(), box.getWeight(),
+                box.getLoadCapacity(), box.getSupportType(), box.getPosition());
     }
 
     public Box(Box box, Cuboid new_dims){
@@ -30,18 +51,32 @@ public class Box extends PositionedCuboid {
         return id;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
     public int getWeight() {
         return weight;
     }
 
+    public int getLoadCapacity() {
+        return loadCapacity;
+    }
+
+    public String getSupportType() {
+        return supportType;
+    }
+
     public void setDims(Cuboid vec){
         width = vec.getWidth();
         depth = vec.getDepth();
         height = vec.getHeight();
+        orientations = null;
     }
 
+    //The shared cuboid of the current dimensions, it must not be modified
     public Cuboid getDims(){
-        return new Cuboid(width, depth, height);
+        return getOrientations().getOrientation(0);
     }
 
     public void placeTheBox(Vector3D pos, Cuboid orientation){
@@ -0,0 +1,83 @@
+package main.PackingObjects;
+
+import java.util.*;
+
+//Boxes that are interchangeable when packing: the same dimensions in any orientation, weight, load capacity and
+//support type. Layers are searched on a few boxes of every type, and the boxes of a type are only told apart by their
+//ids when a layer pattern is turned into layers, see PalletBuilder.selectPatterns
+public class BoxType {
+    int index;
+    //dimensions in increasing order
+    int shortSide;
+    int middleSide;
+    int longSide;
+    int weight;
+    int loadCapacity;
+    String supportType;
+    //boxes of the type in id order
+    List<Box> boxes = new ArrayList<>();
+
+    BoxType(int index, Box box){
+        int[] dims = {box.getWidth(), box.getDepth(), box.getHeight()};
+        Arrays.sort(dims);
+        this.index = index;
+        this.shortSide = dims[0];
+        this.middleSide = dims[1];
+        this.longSide = dims[2];
+        this.weight = box.getWeight();
+        this.loadCapacity = box.getLoadCapacity();
+        this.supportType = box.getSupportType();
+    }
+
+    //The types of the boxes, numbered in the order of their first box by id
+    public static List<BoxType> group(Collection<Box> boxes){
+        List<Box> sortedBoxes = new ArrayList<>(boxes);
+        sortedBoxes.sort(Comparator.comparing(Box::getId));
+        Map<List<Integer>, BoxType> types = new LinkedHashMap<>();
+        for(Box box: sortedBoxes){
+            types.computeIfAbsent(getKey(box), key -> new BoxType(types.size(), box)).boxes.add(box);
+        }
+        return new ArrayList<>(types.values());
+    }
+
+    //The key of the type of the box: its dimensions in increasing order, weight, load capacity and the number of its
+    //support type in Box.SUPPORT_TYPES. Boxes with the same key are interchangeable, this is the only definition of it
+    public static List<Integer> getKey(Box box){
+        int[] dims = {box.getWidth(), box.getDepth(), box.getHeight()};
+        Arrays.sort(dims);
+        return Arrays.asList(dims[0], dims[1], dims[2], box.getWeight(), box.getLoadCapacity(),
+                Arrays.asList(Box.SUPPORT_TYPES).indexOf(box.getSupportType()));
+    }
+
+    //The type key followed by the height of the box as it stands. Boxes with the same standing key are interchangeable
+    //in a layer: of the same type and on the same facet
+    public static List<Integer> getStandingKey(Box box){
+        List<Integer> key = new ArrayList<>(getKey(box));
+        key.add(box.getHeight());
+        return key;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public List<Box> getBoxes() {
+        return boxes;
+    }
+
+    public int getCount() {
+        return boxes.size();
+    }
+
+    //The most boxes of the type any layer on the footprint can hold, lying on their smallest facet, under the weight
+    //limit of the layer
+    public int getMaxPerLayer(int footprintArea, int maxLayerWeight){
+        int byArea = footprintArea / (shortSide * middleSide);
+        int byWeight = weight == 0? Integer.MAX_VALUE: maxLayerWeight / weight;
+        return Math.min(getCount(), Math.min(byArea, byWeight));
+    }
+}
@@ -4,6 +4,8 @@ import main.PlacementObjects.Rectangle;
 
 public class Cuboid{
     protected int width, depth, height;
+    //built on first use, subclasses that change the dimensions have to reset it
+    protected OrientationTable orientations;
     public Cuboid(int width, int depth, int height){
         this.width = width;
         this.depth = depth;
@@ -38,6 +40,15 @@ public class Cuboid{
             largestArea = getLeftArea();
         return largestArea;
     }
+    public OrientationTable getOrientations(){
+        OrientationTable table = orientations;
+        if(table == null){
+            table = OrientationTable.of(width, depth, height);
+            orientations = table;
+        }
+        return table;
+    }
+
     public Rectangle getBottomRectangle(){
         return new Rectangle(width, depth);
     }
@@ -67,7 +78,11 @@ public class Cuboid{
 
 
     public boolean dimensionFits(Cuboid cuboid){
-        if(width >= cuboid.getWidth() && depth >= cuboid.getDepth() && height >= cuboid.getHeight())
+        return dimensionFits(cuboid.getWidth(), cuboid.getDepth(), cuboid.getHeight());
+    }
+
+    public boolean dimensionFits(int width, int depth, int height){
+        if(this.width >= width && this.depth >= depth && this.height >= height)
             return true;
         return false;
     }
@@ -75,10 +90,11 @@ public class Cuboid{
     public boolean accomodate(Cuboid object) {
         if(getVolume() < object.getVolume())
             return false;
-        if(!(dimensionFits(object.rotate(0,0,0))||dimensionFits(object.rotate(0,0,90))||
-                dimensionFits(object.rotate(0,90,0))||dimensionFits(object.rotate(0,90,90))||
-                dimensionFits(object.rotate(90,0,0))||dimensionFits(object.rotate(90,0,90))))
-            return false;
-        return true;
+        OrientationTable table = object.getOrientations();
+        for(int k = 0; k < table.size(); k++){
+            if(dimensionFits(table.getWidth(k), table.getDepth(k), table.getHeight(k)))
+                return true;
+        }
+        return false;
     }
 }
@@ -0,0 +1,108 @@
+package main.PackingObjects;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+//Distinct orientations of a cuboid, in the order of the rotations (0,0,0), (0,0,90), (0,90,0), (0,90,90), (90,0,0) and
+//(90,0,90). Orientations equal to an earlier one are left out, so a cube has a single orientation.
+//Tables are immutable and shared by all the cuboids with the same dimensions. The shared tables are bounded so that a
+//resident process, e.g. the packing service, does not keep every dimension it ever saw: past MAX_TABLES they are all
+//dropped at once. The cuboids keep the table they hold, later ones just get new tables
+public final class OrientationTable {
+    static final int MAX_TABLES = 1 << 14;
+    private static final ConcurrentHashMap<Long, OrientationTable> tables = new ConcurrentHashMap<>();
+
+    //width, depth and height of orientation k at 3k, 3k+1 and 3k+2
+    private final int[] dims;
+    private final Cuboid[] orientations;
+    //the orientations with the original height, the first one or two
+    private final int nbHorizontalOrientations;
+    //for every distinct height, the first orientation standing on it, in the order height = width, depth, height
+    private final int[] standingOrientations;
+
+    private OrientationTable(int width, int depth, int height){
+        int[] candidates = {width, depth, height,  depth, width, height,  height, depth, width,
+                            depth, height, width,  width, height, depth,  height, width, depth};
+        int[] distinct = new int[candidates.length];
+        int nbOrientations = 0;
+        for(int k = 0; k < candidates.length; k += 3){
+            boolean duplicate = false;
+            for(int j = 0; j < nbOrientations * 3 && !duplicate; j += 3){
+                duplicate = distinct[j] == candidates[k] && distinct[j + 1] == candidates[k + 1] && distinct[j + 2] == candidates[k + 2];
+            }
+            if(!duplicate){
+                System.arraycopy(candidates, k, distinct, nbOrientations * 3, 3);
+                nbOrientations++;
+            }
+        }
+        dims = new int[nbOrientations * 3];
+        System.arraycopy(distinct, 0, dims, 0, dims.length);
+        orientations = new Cuboid[nbOrientations];
+        for(int k = 0; k < nbOrientations; k++){
+            orientations[k] = new Cuboid(dims[3 * k], dims[3 * k + 1], dims[3 * k + 2]);
+        }
+        nbHorizontalOrientations = width != depth? 2: 1;
+        int[] standing = new int[3];
+        int nbStanding = 0;
+        for(int h: new int[]{width, depth, height}){
+            boolean seen = false;
+            for(int j = 0; j < nbStanding && !seen; j++){
+                seen = getHeight(standing[j]) == h;
+            }
+            for(int k = 0; k < nbOrientations && !seen; k++){
+                if(getHeight(k) == h){
+                    standing[nbStanding++] = k;
+                    seen = true;
+                }
+            }
+        }
+        standingOrientations = new int[nbStanding];
+        System.arraycopy(standing, 0, standingOrientations, 0, nbStanding);
+    }
+
+    public static OrientationTable of(int width, int depth, int height){
+        long key = ((long) width << 42) | ((long) depth << 21) | height;
+        OrientationTable table = tables.get(key);
+        if(table == null){
+            if(tables.size() >= MAX_TABLES)
+                tables.clear();
+            table = new OrientationTable(width, depth, height);
+            OrientationTable previous = tables.putIfAbsent(key, table);
+            if(previous != null)
+                table = previous;
+        }
+        return table;
+    }
+
+    public int size(){
+        return orientations.length;
+    }
+
+    public int getWidth(int k){
+        return dims[3 * k];
+    }
+
+    public int getDepth(int k){
+        return dims[3 * k + 1];
+    }
+
+    public int getHeight(int k){
+        return dims[3 * k + 2];
+    }
+
+    //The shared cuboid of orientation k, it must not be modified
+    public Cuboid getOrientation(int k){
+        return orientations[k];
+    }
+
+    public int getNbHorizontalOrientations(){
+        return nbHorizontalOrientations;
+    }
+
+    public int getNbStandingOrientations(){
+        return standingOrientations.length;
+    }
+
+    public int getStandingOrientation(int i){
+        return standingOrientations[i];
+    }
+}
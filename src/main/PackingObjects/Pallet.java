@@ -1,44 +1,60 @@
 package main.PackingObjects;
 
+import main.Constraints.ConstraintEngine;
 import main.PlacementObjects.Placement;
+import main.PlacementObjects.Vector3D;
 import main.State.LayerState;
 import main.State.PalletState;
 
 import java.util.ArrayList;
-import java.util.Map;
+import java.util.List;
 
 public class Pallet extends Cuboid {
     int maxWeight;
     PalletState state;
     String id;
+    ConstraintEngine constraints;
 
     public Pallet(String id, int width, int depth, int height, int maxWeight) {
+        this(id, width, depth, height, maxWeight, new ConstraintEngine(maxWeight, ConstraintEngine.DEFAULT_CONSTRAINTS,
+                ConstraintEngine.DEFAULT_SUPPORT_AREA_RATIO));
+    }
+
+    public Pallet(String id, int width, int depth, int height, int maxWeight, ConstraintEngine constraints) {
         super(width, depth, height);
         this.id = id;
         this.maxWeight = maxWeight;
+        this.constraints = constraints;
         state = new PalletState(this);
     }
 
+    //Whether the box can go at the position with the orientation without breaking the constraints of the pallet, the
+    //free space is not checked
+    public boolean isFeasible(Box box, Vector3D position, Cuboid orientation){
+        return constraints.isFeasible(box, position, orientation);
+    }
+
     public void placeBox(Box box) throws Exception {
         state.updateState(box);
-        state.outputState();
-        Map<Box,Box> conflicts = state.findOverlappingBoxes();
+        constraints.place(box);
+        //only the new box can overlap, the boxes placed before were checked when they were placed
+        List<Box> conflicts = state.findOverlappingBoxes(box);
         if(!conflicts.isEmpty()){
             System.out.print("Box overlaps");
         }
     }
 
     public void placeLayer(LayerState layerState, int z_position){
-        for(Placement placement: layerState.getPlacements().values()){
+        for(Placement placement: layerState.getPlacements()){
             placement.getPosition().setZ(z_position);
             placement.getBox().placeTheBox(placement.getPosition(), placement.getOrientation());
             try {
                 state.updateState(placement.getBox());
+                constraints.place(placement);
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
-        state.outputState();
     }
 
     public String getId() {
@@ -49,6 +65,10 @@ public class Pallet extends Cuboid {
         return maxWeight;
     }
 
+    public ConstraintEngine getConstraints() {
+        return constraints;
+    }
+
     public PalletState getState() {
         return state;
     }
@@ -61,4 +81,8 @@ public class Pallet extends Cuboid {
         return state.getFeasibleFreeSpaces(box);
     }
 
+    public FreeSpace3D findFeasibleFreeSpace(Box box){
+        return state.findFeasibleFreeSpace(box);
+    }
+
 }
@@ -0,0 +1,80 @@
+package main.PackingObjects;
+
+import main.Constraints.ConstraintEngine;
+import main.utils.PackingConfiguration;
+
+//Dimensions, weight capacity and cost of a kind of pallet or container, see PackingConfiguration for how the types are
+//configured
+public class PalletType {
+    String name;
+    int width;
+    int depth;
+    int height;
+    int capacity;
+    //what shipping one of them costs, only compared between the types of a fleet
+    double cost;
+
+    public PalletType(String name, int width, int depth, int height, int capacity){
+        this(name, width, depth, height, capacity, 1);
+    }
+
+    public PalletType(String name, int width, int depth, int height, int capacity, double cost){
+        if(width <= 0 || depth <= 0 || height <= 0 || capacity <= 0)
+            throw new IllegalArgumentException("The dimensions and the capacity of pallet type " + name + " must be positive");
+        if(cost < 0)
+            throw new IllegalArgumentException("The cost of pallet type " + name + " must not be negative");
+        this.name = name;
+        this.width = width;
+        this.depth = depth;
+        this.height = height;
+        this.capacity = capacity;
+        this.cost = cost;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public double getCost() {
+        return cost;
+    }
+
+    //A layer built on a footprint fits in every type whose bottom contains it
+    public boolean containsFootprint(int width, int depth) {
+        return width <= this.width && depth <= this.depth;
+    }
+
+    public int getBottomArea() {
+        return width * depth;
+    }
+
+    public Pallet createPallet(String id){
+        return new Pallet(id, width, depth, height, capacity);
+    }
+
+    //A pallet checking the constraints of the configuration
+    public Pallet createPallet(String id, PackingConfiguration configuration){
+        return new Pallet(id, width, depth, height, capacity, new ConstraintEngine(this, configuration));
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + width + "x" + depth + "x" + height + ", " + capacity + ", cost " + cost + ")";
+    }
+}
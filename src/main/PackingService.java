@@ -0,0 +1,307 @@
+package main;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import main.Metrics.PackingMetrics;
+import main.PackingObjects.Box;
+import main.PlacementObjects.Placement;
+import main.State.LayerCache;
+import main.State.LayerState;
+import main.utils.InputReader;
+import main.utils.PackingConfiguration;
+import main.utils.ResultWriter;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+//Resident packing service, so that orders do not pay the start, class loading and warm-up of a new JVM each.
+//POST /pack takes a manifest in the format of InputReader as body, and key=value query parameters overriding the
+//configuration for that order, e.g. /pack?packingMode=FLEET. It answers with one CSV row per box:
+//bin,palletType,id,width,depth,height,x,y,z. GET /metrics gives the service metrics in the Prometheus text format and
+//GET /health answers OK.
+//Orders wait in a bounded queue and are packed by serviceWorkers workers, each layer search splitting its shuffles over
+//one pool of nbWorkers threads shared by all the orders. When the queue is full a new order is turned away at once
+//with 503, so a burst makes the clients back off instead of piling up work.
+//A worker taking a small order, at most serviceSmallOrderBoxes boxes, also takes the orders waiting behind it, up to
+//serviceBatchMaxOrders, and waits serviceBatchWindowMs for more. A large order taken that way ends the batch. The
+//orders of a batch are packed at the same time as tasks of the shared pool, so the idle workers of one order's search
+//steal the shuffles of the others, and through the shared layer cache a cluster of the same signature in two orders of
+//the batch is searched once, the other order waiting for its layer. That sharing is the one of the GREEDY mode, whose
+//layers go through the cache; FLEET orders of a batch only share the pool.
+//Only the keys of ORDER_KEYS can be overridden by an order, the search effort and the time limits stay those of the
+//service so that no order can hold the shared pool. Every order is answered as soon as it is packed.
+//The orders never write result files, their results are in the answers
+public class PackingService {
+    static final Set<String> ORDER_KEYS = new HashSet<>(Arrays.asList("palletType", "packingMode", "constraints", "supportAreaRatio", "seed"));
+
+    PackingConfiguration configuration;
+    HttpServer server;
+    ExecutorService handlerPool;
+    ForkJoinPool searchPool;
+    List<Thread> workers = new ArrayList<>();
+    LinkedBlockingQueue<Order> queue;
+    PackingMetrics metrics = new PackingMetrics();
+    //shared by all the orders, so that orders repeating the clusters of earlier ones skip their searches
+    LayerCache layerCache;
+    volatile boolean running;
+
+    //An order waiting to be packed, completed with its CSV answer
+    static class Order {
+        Map<String, Box> boxes;
+        PackingConfiguration configuration;
+        CompletableFuture<String> result = new CompletableFuture<>();
+        long submitted = System.nanoTime();
+
+        Order(Map<String, Box> boxes, PackingConfiguration configuration){
+            this.boxes = boxes;
+            this.configuration = configuration;
+        }
+    }
+
+    public PackingService(PackingConfiguration configuration) throws IOException {
+        this.configuration = configuration.withOverrides(Collections.singletonMap("writeResults", "false"));
+        this.queue = new LinkedBlockingQueue<>(configuration.getServiceQueueCapacity());
+        int nbWorkers = configuration.getNbWorkers();
+        this.searchPool = new ForkJoinPool(nbWorkers > 0? nbWorkers: Runtime.getRuntime().availableProcessors());
+        if(configuration.getLayerCacheSize() > 0){
+            String file = configuration.getLayerCacheFile();
+            layerCache = LayerCache.open(configuration.getLayerCacheSize(), file == null? null: Paths.get(file));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        PackingService service = new PackingService(PackingConfiguration.load(args));
+        service.start();
+    }
+
+    public void start() throws IOException {
+        if(configuration.getServiceWarmupManifest() != null)
+            warmUp(configuration.getServiceWarmupManifest());
+        running = true;
+        for(int i = 0; i < configuration.getServiceWorkers(); i++){
+            Thread worker = new Thread(this::work, "packing-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        server = HttpServer.create(new InetSocketAddress(configuration.getServicePort()), 0);
+        server.createContext("/pack", this::handlePack);
+        server.createContext("/metrics", this::handleMetrics);
+        server.createContext("/health", exchange -> respond(exchange, 200, "text/plain", "OK\n"));
+        //the handlers only parse and queue, the answers are sent by the workers
+        handlerPool = Executors.newFixedThreadPool(2);
+        server.setExecutor(handlerPool);
+        server.start();
+    }
+
+    //Stops taking orders, fails the ones still waiting and saves the layer cache
+    public void stop() throws IOException {
+        running = false;
+        if(server != null)
+            server.stop(0);
+        if(handlerPool != null)
+            handlerPool.shutdownNow();
+        for(Thread worker: workers){
+            worker.interrupt();
+        }
+        List<Order> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        for(Order order: pending){
+            order.result.completeExceptionally(new IllegalStateException("The packing service stopped"));
+        }
+        searchPool.shutdownNow();
+        if(layerCache != null && configuration.getLayerCacheFile() != null)
+            layerCache.save(Paths.get(configuration.getLayerCacheFile()));
+    }
+
+    //The port the service listens on, e.g. when servicePort is 0
+    public int getPort(){
+        return server.getAddress().getPort();
+    }
+
+    public PackingMetrics getMetrics() {
+        return metrics;
+    }
+
+    //Queues the order, or returns null when the queue is full
+    public CompletableFuture<String> submit(Map<String, Box> boxes, PackingConfiguration orderConfiguration){
+        Order order = new Order(boxes, orderConfiguration);
+        if(!queue.offer(order)){
+            metrics.increment("orders_rejected_total");
+            return null;
+        }
+        metrics.increment("orders_accepted_total");
+        return order.result;
+    }
+
+    private void warmUp(String manifest) throws IOException {
+        Map<String, Box> boxes = new InputReader().readData(manifest);
+        long start = System.nanoTime();
+        new PalletBuilder(boxes, configuration, searchPool, layerCache).pack();
+        metrics.setGauge("warmup_seconds", (System.nanoTime() - start) / 1e9);
+    }
+
+    private void work(){
+        while(running){
+            Order first;
+            try {
+                first = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            List<Order> batch = new ArrayList<>();
+            batch.add(first);
+            if(isSmall(first))
+                fillBatch(batch);
+            metrics.record("batch_orders", batch.size());
+            if(batch.size() == 1){
+                pack(first);
+                continue;
+            }
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for(Order order: batch){
+                tasks.add(ForkJoinTask.adapt(() -> pack(order)));
+            }
+            try {
+                searchPool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+            } catch (RejectedExecutionException e) {
+                //the service stopped, the orders not packed yet fail
+                for(Order order: batch){
+                    order.result.completeExceptionally(new IllegalStateException("The packing service stopped"));
+                }
+            }
+        }
+    }
+
+    //Adds the orders waiting behind, until a large one, the batch is full or the batch window is over
+    private void fillBatch(List<Order> batch){
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(configuration.getServiceBatchWindowMs());
+        while(batch.size() < configuration.getServiceBatchMaxOrders()){
+            Order next;
+            try {
+                next = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if(next == null)
+                return;
+            batch.add(next);
+            if(!isSmall(next))
+                return;
+        }
+    }
+
+    private boolean isSmall(Order order){
+        return order.boxes.size() <= configuration.getServiceSmallOrderBoxes();
+    }
+
+    private void pack(Order order){
+        long start = System.nanoTime();
+        metrics.record("queue_wait_nanos", start - order.submitted);
+        try {
+            PalletBuilder builder = new PalletBuilder(order.boxes, order.configuration, searchPool, layerCache);
+            List<PackedBin> bins = builder.pack();
+            order.result.complete(toCsv(bins));
+            metrics.increment("orders_packed_total");
+            //the boxes no layer can hold are not in the response
+            metrics.counter("boxes_unpacked_total").add(builder.getUnpackedBoxes().size());
+        } catch (Exception e) {
+            metrics.increment("orders_failed_total");
+            order.result.completeExceptionally(e);
+        }
+        long end = System.nanoTime();
+        metrics.record("pack_nanos", end - start);
+        metrics.record("order_latency_nanos", end - order.submitted);
+    }
+
+    private static String toCsv(List<PackedBin> bins){
+        StringBuilder csv = new StringBuilder();
+        for(int b = 0; b < bins.size(); b++){
+            for(LayerState layer: bins.get(b).getLayers()){
+                for(Placement p: layer.getPlacements()){
+                    csv.append(b).append(',').append(bins.get(b).getPalletType().getName()).append(',');
+                    ResultWriter.appendCsv(csv, p, true);
+                }
+            }
+        }
+        return csv.toString();
+    }
+
+    private void handlePack(HttpExchange exchange) throws IOException {
+        if(!exchange.getRequestMethod().equals("POST")){
+            respond(exchange, 405, "text/plain", "Use POST\n");
+            return;
+        }
+        CompletableFuture<String> result;
+        try {
+            PackingConfiguration orderConfiguration = configuration;
+            Map<String, String> overrides = parseQuery(exchange.getRequestURI().getRawQuery());
+            if(!overrides.isEmpty()){
+                for(String key: overrides.keySet()){
+                    if(!ORDER_KEYS.contains(key))
+                        throw new IllegalArgumentException("An order cannot override " + key + ", only " + ORDER_KEYS);
+                }
+                overrides.put("writeResults", "false");
+                orderConfiguration = configuration.withOverrides(overrides);
+            }
+            Map<String, Box> boxes;
+            try(Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)){
+                boxes = new InputReader().readData(reader);
+            }
+            result = submit(boxes, orderConfiguration);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, "text/plain", e.getMessage() + "\n");
+            return;
+        }
+        if(result == null){
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, "text/plain", "The packing queue is full\n");
+            return;
+        }
+        result.whenComplete((csv, error) -> {
+            try {
+                if(error == null)
+                    respond(exchange, 200, "text/csv", csv);
+                else
+                    respond(exchange, error instanceof IllegalArgumentException? 400: 500, "text/plain", error + "\n");
+            } catch (IOException e) {
+                exchange.close();
+            }
+        });
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        metrics.setGauge("queue_orders", queue.size());
+        StringWriter writer = new StringWriter();
+        metrics.writePrometheus(writer);
+        respond(exchange, 200, "text/plain; version=0.0.4", writer.toString());
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+        if(query == null || query.isEmpty())
+            return parameters;
+        for(String pair: query.split("&")){
+            int equals = pair.indexOf('=');
+            if(equals <= 0)
+                throw new IllegalArgumentException("Expected key=value query parameters, got " + pair);
+            parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+        }
+        return parameters;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try(OutputStream out = exchange.getResponseBody()){
+            out.write(bytes);
+        }
+    }
+}
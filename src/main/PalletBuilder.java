@@ -1,48 +1,174 @@
 package main;
 
+import main.Constraints.ConstraintEngine;
+import main.Metrics.PackingMetrics;
 import main.PackingObjects.Box;
+import main.PackingObjects.BoxType;
 import main.PackingObjects.Cuboid;
 import main.PackingObjects.FreeSpace3D;
+import main.PackingObjects.OrientationTable;
 import main.PackingObjects.Pallet;
+import main.PackingObjects.PalletType;
 import main.PlacementObjects.Placement;
 import main.PlacementObjects.PositionedRectangle;
+import main.PlacementObjects.Vector3D;
+import main.Solvers.BinPackingSolver;
+import main.Solvers.CuttingStockSolver;
+import main.Solvers.FleetBinPackingSolver;
+import main.Solvers.SetCoveringSolver;
+import main.Solvers.SolverFactory;
+import main.State.LayerCache;
 import main.State.LayerState;
-import main.utils.FreeSpaceComparator;
-import main.utils.PackingConfigurationsSingleton;
+import main.utils.PackingConfiguration;
+import main.utils.ResultWriter;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import ilog.concert.*;
-import ilog.cplex.*;
 
 public class PalletBuilder {
     Map<String, Box> boxesToPack;
     Box box = null;
-    LayerBuilder layerBuilder = new LayerBuilder();
+    SplittableRandom random;
+    LayerBuilder layerBuilder;
+    PackingConfiguration configuration;
+    PalletType palletType;
+    //shuffle counts and time limits of the layer searches, the order time limit is applied on top of both
+    SearchBudget layerBudget;
+    SearchBudget insertionBudget;
+    long orderTimeLimitMs;
+    long orderDeadline = Long.MAX_VALUE;
+    SetCoveringSolver setCoveringSolver;
+    BinPackingSolver binPackingSolver;
+    ResultWriter resultWriter;
+    //layers generated on each footprint of the fleet, by height, see buildFleet
+    Map<Long, Map<Integer, List<LayerState>>> layersByFootprint = new HashMap<>();
+    Map<Long, LayerBuilder> layerBuildersByFootprint = new HashMap<>();
+    PackingMetrics metrics = new PackingMetrics();
+    //boxes no layer can hold, e.g. heavier than the pallet capacity, left out of the bins of the last order
+    List<Box> unpackedBoxes = new ArrayList<>();
+    //best layers of clusters seen before, saved to the layerCacheFile after every run when the builder opened it
+    LayerCache layerCache;
+    boolean ownLayerCache;
 
     public PalletBuilder(Map<String, Box> boxes)
+    {
+        this(boxes, PackingConfiguration.getDefault());
+    }
+
+    public PalletBuilder(Map<String, Box> boxes, long seed)
+    {
+        this(boxes, PackingConfiguration.getDefault(), seed);
+    }
+
+    public PalletBuilder(Map<String, Box> boxes, PackingConfiguration configuration)
+    {
+        this(boxes, configuration, configuration.getSeed());
+    }
+
+    //Without time limits, the same seed and number of workers give the same packing, see LayerBuilder.constructLayers
+    public PalletBuilder(Map<String, Box> boxes, PackingConfiguration configuration, long seed)
+    {
+        this(boxes, configuration, seed, null, null);
+    }
+
+    //The layer searches run in the given pool instead of the shared pool of nbWorkers, see LayerBuilder.SHARED_POOLS
+    public PalletBuilder(Map<String, Box> boxes, PackingConfiguration configuration, ForkJoinPool pool)
+    {
+        this(boxes, configuration, configuration.getSeed(), pool, null);
+    }
+
+    //The layers are also looked up in and added to the given cache, shared with other builders
+    public PalletBuilder(Map<String, Box> boxes, PackingConfiguration configuration, ForkJoinPool pool, LayerCache layerCache)
+    {
+        this(boxes, configuration, configuration.getSeed(), pool, layerCache);
+    }
+
+    private PalletBuilder(Map<String, Box> boxes, PackingConfiguration configuration, long seed, ForkJoinPool pool,
+                          LayerCache layerCache)
     {
         boxesToPack = boxes;
+        this.configuration = configuration;
+        palletType = configuration.getPalletType();
+        layerBudget = new SearchBudget(configuration.getLayerShuffles(), configuration.getLayerTimeLimitMs(),
+                configuration.getStallShuffles());
+        insertionBudget = new SearchBudget(configuration.getInsertionShuffles(), configuration.getLayerTimeLimitMs(), 0);
+        orderTimeLimitMs = configuration.getOrderTimeLimitMs();
+        setCoveringSolver = SolverFactory.createSetCoveringSolver(configuration);
+        binPackingSolver = SolverFactory.createBinPackingSolver(configuration);
+        resultWriter = new ResultWriter(configuration);
+        random = new SplittableRandom(seed);
+        if(pool == null)
+            layerBuilder = new LayerBuilder(configuration, palletType, configuration.getNbWorkers(), random.split(), metrics);
+        else
+            layerBuilder = new LayerBuilder(configuration, palletType, pool, random.split(), metrics);
+        if(layerCache == null && configuration.getLayerCacheSize() > 0){
+            String file = configuration.getLayerCacheFile();
+            try {
+                layerCache = LayerCache.open(configuration.getLayerCacheSize(), file == null? null: Paths.get(file));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            ownLayerCache = true;
+        }
+        this.layerCache = layerCache;
+        layerBuilder.setLayerCache(layerCache);
         layerBuilder.updateBoxesToPack(boxesToPack);
-        //TODO: create pallet dimension object
+    }
 
+    //Packs the boxes in the packing mode of the configuration, GREEDY or FLEET, and returns the stacked bins
+    public List<PackedBin> pack() throws IOException {
+        List<PackedBin> bins = configuration.getPackingMode().equals("FLEET")? buildFleet(): packGreedy();
+        saveLayerCache();
+        return bins;
     }
 
     //This method builds pallet with a greedy heuristic.
     //Every iteration, it finds a cluster of same height boxes, builds best possible layer within a given number of random shuffles
     public List<Pallet> buildPalletsGreedy() throws IOException {
+        packGreedy();
+        saveLayerCache();
+        return null;
+    }
+
+    private List<PackedBin> packGreedy() throws IOException {
+        startOrder();
         BoxCluster boxCluster = new BoxCluster();
-        LayerBuilder layerBuilder = new LayerBuilder();
         List<LayerState> layers = new ArrayList<>();
+        List<Box> unholdableBoxes = boxesToPack.values().stream().filter(b -> !layerBuilder.canHold(b)).collect(Collectors.toList());
+        reportUnpackedBoxes(unholdableBoxes);
+        boxesToPack.values().removeAll(unholdableBoxes);
         while(boxesToPack.size() > 0){
-            Map<String, Box> maxCluster = boxCluster.getMaxSizeCluster(boxesToPack);
-            LayerState layer = layerBuilder.generateBestLayer(maxCluster.values().stream().collect(Collectors.toList()), 40000);
+            Map<String, Box> maxCluster;
+            PackingMetrics.Phase clustering = metrics.startPhase("clustering");
+            try {
+                maxCluster = boxCluster.getMaxSizeCluster(boxesToPack, layerBuilder::fitsStanding);
+            } finally {
+                clustering.close();
+            }
+            LayerState layer;
+            PackingMetrics.Phase generation = metrics.startPhase("layer_generation");
+            try {
+                layer = layerBuilder.generateBestLayer(maxCluster.values().stream().collect(Collectors.toList()), layerBudget.withDeadline(orderDeadline));
+            } finally {
+                generation.close();
+            }
+            //the filters above should rule this out, but a layer without boxes would never take any box out of the order
+            if(layer.getNumberOfBoxes() == 0){
+                List<Box> clusterBoxes = maxCluster.keySet().stream().map(boxesToPack::get).collect(Collectors.toList());
+                reportUnpackedBoxes(clusterBoxes);
+                boxesToPack.values().removeAll(clusterBoxes);
+                continue;
+            }
             layers.add(layer);
-            boxesToPack.keySet().removeAll(layer.getBoxIds());
+            for(Placement p: layer.getPlacements()){
+                boxesToPack.remove(p.getBox().getId());
+            }
         }
         layers = layers.stream().sorted(Comparator.comparing(LayerState::getTotalUsedArea).reversed()).collect(Collectors.toList());
         //Start from layers with few boxes, see if they can be inserted into other layers
@@ -57,23 +183,32 @@ public class PalletBuilder {
 
         tryIterativeBoxInsertion(layers, separatingLayerIndex, "SHUFFLE");
 
-        int nbPacks = layers.stream().mapToInt(LayerState::getNumberOfBoxes).sum();
         writeLayers(layers);
-        List<List<LayerState>> bins = solveOneDimBinPacking(layers);
-        for(List<LayerState> layersInABin: bins){
-            layersInABin.stream().sorted(Comparator.comparing(LayerState::getTotalUsedArea).reversed().thenComparing(LayerState::getNbDistinctHeights)).collect(Collectors.toList());
-            stackLayers(layersInABin);
-        }
+        List<List<LayerState>> bins = stackBins(solveOneDimBinPacking(layers), palletType);
         writeBins(bins);
-        return null;
+        recordRun(layers, bins.size());
+        List<PackedBin> packedBins = new ArrayList<>();
+        for(List<LayerState> bin: bins){
+            packedBins.add(new PackedBin(palletType, bin));
+        }
+        return packedBins;
 
     }
 
     //This method try to insert boxes from sparsely packed layers into densely packed layers
     private void tryIterativeBoxInsertion(List<LayerState> layers, int separatingLayerIndex, String insertionType){
+        PackingMetrics.Phase insertion = metrics.startPhase("insertion_" + insertionType.toLowerCase());
+        try {
+            insertBoxesIntoDenserLayers(layers, separatingLayerIndex, insertionType);
+        } finally {
+            insertion.close();
+        }
+    }
+
+    private void insertBoxesIntoDenserLayers(List<LayerState> layers, int separatingLayerIndex, String insertionType){
         for(int i = layers.size() - 1; i > separatingLayerIndex; i--){
             LayerState layer = layers.get(i);
-            List<String> boxesInserted = new ArrayList<>();
+            BitSet boxesInserted = new BitSet();
             for(Box box: layer.getPackedBoxes()){
                 for(int j = 0; j <= separatingLayerIndex; j++){
                     LayerState accommodatingLayer = layers.get(j);
@@ -96,16 +231,13 @@ public class PalletBuilder {
                     }
 
                     if(newLayer != null){
-                        boxesInserted.add(box.getId());
+                        boxesInserted.set(box.getIndex());
                         layers.set(j, newLayer);
                         break;
                     }
                 }
             }
             layer.removeBoxes(boxesInserted);
-            int nbPacks = layers.stream().mapToInt(LayerState::getNumberOfBoxes).sum();
-            if(nbPacks < 1000)
-                System.out.println("Check Nb boxes");
         }
         //remove empty layers
         List<LayerState> layersToRemove = new ArrayList<>();
@@ -117,10 +249,30 @@ public class PalletBuilder {
     }
 
     public LayerState insertBox(Box box, LayerState layer, String insertionType){
+        metrics.increment("insertion_attempts_total{type=\"" + insertionType + "\"}");
         if(layer.getTotalFreeArea() < box.getBottomArea()){
             return null;
         }
-        return new LayerBuilder().enhanceLayer(box, layer, insertionType);
+        LayerState newLayer = layerBuilder.enhanceLayer(box, layer, insertionType, insertionBudget.withDeadline(orderDeadline));
+        if(newLayer != null)
+            metrics.increment("insertion_hits_total{type=\"" + insertionType + "\"}");
+        return newLayer;
+    }
+
+    //Starts the clock of the order time limit
+    private void startOrder(){
+        orderDeadline = orderTimeLimitMs > 0? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(orderTimeLimitMs): Long.MAX_VALUE;
+        unpackedBoxes.clear();
+    }
+
+    //The boxes left out of the bins of the last order because no layer can hold them
+    public List<Box> getUnpackedBoxes() {
+        return unpackedBoxes;
+    }
+
+    private void reportUnpackedBoxes(Collection<Box> boxes){
+        unpackedBoxes.addAll(boxes);
+        metrics.counter("boxes_unpacked_total").add(boxes.size());
     }
 
     private int findSeparatingLayerIndex(List<LayerState> layers){
@@ -152,27 +304,34 @@ public class PalletBuilder {
     }
     //TODO change the output to be a list of pallets
     public Pallet buildPallet(boolean buildByLayer) throws Exception {
-        Pallet pallet = new Pallet("Pallet", Integer.parseInt(PackingConfigurationsSingleton.getProperty("width")),
-                Integer.parseInt(PackingConfigurationsSingleton.getProperty("depth")),
-                Integer.parseInt(PackingConfigurationsSingleton.getProperty("height")),
-                Integer.parseInt(PackingConfigurationsSingleton.getProperty("capacity")));// while still packable
+        startOrder();
+        Pallet pallet = palletType.createPallet("Pallet", configuration);// while still packable
         if(!buildByLayer){
             //TODO: finish while loop to pack boxes
             box = findPlacement(pallet);
             while(box != null)
             {
                 pallet.placeBox(box);
-                boxesToPack.remove(box);
+                boxesToPack.remove(box.getId());
                 box = findPlacement(pallet);
             }
+            writePallet(pallet);
         }
 
         if(buildByLayer){
-            LayerBuilder layerBuilder = new LayerBuilder();
-            layerBuilder.updateBoxesToPack(boxesToPack);
-            Map<Integer, List<LayerState>> layersGroupByHeight = layerBuilder.generateLayers(40000, 0.2);
+            Map<Integer, List<LayerState>> layersGroupByHeight = layerBuilder.generateLayers(layerBudget.withDeadline(orderDeadline), 0.2);
             //solve a set covering problem to cover all boxes with the generated layers using the minimum number of layers
-            List<LayerState> selectedLayers = solveSetCovering(layersGroupByHeight);
+            List<LayerState> selectedLayers = solveSetCovering(layersGroupByHeight, layerBuilder);
+            //the selected layers are disjoint and patterns only cover exact counts, so some boxes may be left out
+            BitSet coveredBoxes = new BitSet();
+            for(LayerState layer: selectedLayers){
+                coveredBoxes.or(layer.getBoxIndices());
+            }
+            for(LayerState layer: buildLayersOfUncoveredBoxes(coveredBoxes, layerBuilder)){
+                selectedLayers.add(layer);
+                coveredBoxes.or(layer.getBoxIndices());
+            }
+            reportUnpackedBoxes(getUncoveredBoxes(coveredBoxes));
             //solve a 1-D bin packing problem with layer heights subject to pallet height constraint
             //List<Pallet> pallets = solveOneDimBinPacking(selectedLayers);
 
@@ -202,8 +361,8 @@ public class PalletBuilder {
 
             /*for(int i = 0, h = 0, totalWeight = 0; i < layers.size(); i++){
                 LayerState layer = layers.get(i);
-                if(h + layer.getLayerHeight() < Integer.parseInt(PackingConfigurationsSingleton.getProperty("height"))
-                    && totalWeight + layer.getLayerHeight() < Integer.parseInt(PackingConfigurationsSingleton.getProperty("capacity"))
+                if(h + layer.getLayerHeight() < palletType.getHeight()
+                    && totalWeight + layer.getLayerHeight() < palletType.getCapacity()
                 ){
                     pallet.placeLayer(layer, h);
                     h += layer.getLayerHeight();
@@ -219,193 +378,379 @@ public class PalletBuilder {
         return pallet;
     }
 
+    //Packs the boxes over all the pallet types of the configuration at the lowest total cost.
+    //Layers are generated once per footprint, and the layers of a footprint fit in every type whose bottom contains it.
+    //For every footprint, set covering selects layers and FleetBinPackingSolver stacks them into the types that hold
+    //them. The boxes the selected layers leave out get layers of their own, built greedily.
+    //The plan covering the most boxes wins, then the cheapest one
+    public List<PackedBin> buildFleet() throws IOException {
+        startOrder();
+        List<PalletType> palletTypes = configuration.getPalletTypes();
+        Map<Long, PalletType> footprints = new LinkedHashMap<>();
+        for(PalletType type: palletTypes){
+            footprints.putIfAbsent(getFootprintKey(type), type);
+        }
+        FleetBinPackingSolver fleetSolver = new FleetBinPackingSolver();
+        List<PackedBin> bestPlan = null;
+        BitSet bestCoveredBoxes = null;
+        int bestNbCoveredBoxes = -1;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for(PalletType footprint: footprints.values()){
+            List<LayerState> selectedLayers = solveSetCovering(getLayersOnFootprint(footprint), getLayerBuilder(footprint));
+            BitSet coveredBoxes = new BitSet();
+            for(LayerState layer: selectedLayers){
+                coveredBoxes.or(layer.getBoxIndices());
+            }
+            for(LayerState layer: buildLayersOfUncoveredBoxes(coveredBoxes, getLayerBuilder(footprint))){
+                selectedLayers.add(layer);
+                coveredBoxes.or(layer.getBoxIndices());
+            }
+            List<PalletType> fittingTypes = palletTypes.stream()
+                    .filter(type -> type.containsFootprint(footprint.getWidth(), footprint.getDepth())).collect(Collectors.toList());
+            int[] heights = selectedLayers.stream().mapToInt(LayerState::getLayerHeight).toArray();
+            int[] weights = selectedLayers.stream().mapToInt(LayerState::getTotalWeight).toArray();
+            List<FleetBinPackingSolver.Bin> bins;
+            PackingMetrics.Phase binPacking = metrics.startPhase("bin_packing");
+            try {
+                bins = fleetSolver.solve(heights, weights,
+                        fittingTypes.stream().mapToInt(PalletType::getHeight).toArray(),
+                        fittingTypes.stream().mapToInt(PalletType::getCapacity).toArray(),
+                        fittingTypes.stream().mapToDouble(PalletType::getCost).toArray());
+            } finally {
+                binPacking.close();
+            }
+            double cost = fleetSolver.getCost(bins);
+            if(coveredBoxes.cardinality() > bestNbCoveredBoxes || coveredBoxes.cardinality() == bestNbCoveredBoxes && cost < bestCost){
+                bestNbCoveredBoxes = coveredBoxes.cardinality();
+                bestCoveredBoxes = coveredBoxes;
+                bestCost = cost;
+                bestPlan = new ArrayList<>();
+                for(FleetBinPackingSolver.Bin bin: bins){
+                    List<LayerState> layers = bin.getItems().stream().map(selectedLayers::get).collect(Collectors.toList());
+                    bestPlan.add(new PackedBin(fittingTypes.get(bin.getType()), layers));
+                }
+            }
+        }
+        reportUnpackedBoxes(getUncoveredBoxes(bestCoveredBoxes));
+        List<PackedBin> stackedPlan = new ArrayList<>();
+        List<LayerState> stackedLayers = new ArrayList<>();
+        for(PackedBin bin: bestPlan){
+            for(List<LayerState> layers: stackBins(Collections.singletonList(bin.getLayers()), bin.getPalletType())){
+                stackedPlan.add(new PackedBin(bin.getPalletType(), layers));
+                stackedLayers.addAll(layers);
+            }
+        }
+        if(configuration.isWriteResults()){
+            PackingMetrics.Phase output = metrics.startPhase("output");
+            try {
+                resultWriter.writeFleet(stackedPlan);
+            } finally {
+                output.close();
+            }
+        }
+        recordRun(stackedLayers, stackedPlan.size());
+        return stackedPlan;
+    }
+
+    //The layers of the boxes to pack on the bottom of the pallet type, generated on the first call for its footprint
+    private Map<Integer, List<LayerState>> getLayersOnFootprint(PalletType type){
+        return layersByFootprint.computeIfAbsent(getFootprintKey(type),
+                key -> getLayerBuilder(type).generateLayers(layerBudget.withDeadline(orderDeadline), 0.2));
+    }
+
+    //The builder of the layers on the footprint of the pallet type, created on the first call for its footprint
+    private LayerBuilder getLayerBuilder(PalletType type){
+        return layerBuildersByFootprint.computeIfAbsent(getFootprintKey(type),
+                key -> getFootprintKey(layerBuilder.getPalletType()) == key? layerBuilder: layerBuilder.forPalletType(type));
+    }
+
+    //Layers of the boxes not in the covered set, built as in buildPalletsGreedy. A box that fits in no layer of the
+    //builder, e.g. one heavier than the pallet capacity, is left out, for the caller to report
+    private List<LayerState> buildLayersOfUncoveredBoxes(BitSet coveredBoxes, LayerBuilder builder){
+        Map<String, Box> uncoveredBoxes = new HashMap<>();
+        for(Box box: getUncoveredBoxes(coveredBoxes)){
+            if(builder.canHold(box))
+                uncoveredBoxes.put(box.getId(), box);
+        }
+        BoxCluster boxCluster = new BoxCluster();
+        List<LayerState> layers = new ArrayList<>();
+        while(!uncoveredBoxes.isEmpty()){
+            Map<String, Box> maxCluster;
+            PackingMetrics.Phase clustering = metrics.startPhase("clustering");
+            try {
+                maxCluster = boxCluster.getMaxSizeCluster(uncoveredBoxes, builder::fitsStanding);
+            } finally {
+                clustering.close();
+            }
+            LayerState layer;
+            PackingMetrics.Phase generation = metrics.startPhase("layer_generation");
+            try {
+                layer = builder.generateBestLayer(new ArrayList<>(maxCluster.values()), layerBudget.withDeadline(orderDeadline));
+            } finally {
+                generation.close();
+            }
+            //none of the boxes of the cluster fits
+            if(layer.getNumberOfBoxes() == 0){
+                uncoveredBoxes.keySet().removeAll(maxCluster.keySet());
+                continue;
+            }
+            layers.add(layer);
+            for(Placement p: layer.getPlacements()){
+                uncoveredBoxes.remove(p.getBox().getId());
+            }
+        }
+        return layers;
+    }
+
+    private List<Box> getUncoveredBoxes(BitSet coveredBoxes){
+        return boxesToPack.values().stream().filter(box -> !coveredBoxes.get(box.getIndex())).collect(Collectors.toList());
+    }
+
+    private static long getFootprintKey(PalletType type){
+        return (long) type.getWidth() << 32 | type.getDepth();
+    }
+
     private Box findPlacement(Pallet pallet){
         for(Box box: boxesToPack.values()){
-            ArrayList<FreeSpace3D> fss = pallet.getFeasibleFreeSpaces(box);
-            if(!fss.isEmpty()){
-                //add comparator for sorting free spaces
-                fss.sort(new FreeSpaceComparator());
-                //TODO: currently only placing at front bottom left point, add attemps for placing at other three points
-                //TODO: currently returns when a first feasible box placement is found, add comparison of multiple feasible placements
-                FreeSpace3D fs = fss.get(0);
-                box.setPosition(fs.getPosition());
-                //randomly finds a box orientation
-                ArrayList<Cuboid> feasibleOrientations = new ArrayList<>();
-                Cuboid tempOrientation = box.rotate(0,0,0);
-                if(fs.dimensionFits(tempOrientation))
-                    feasibleOrientations.add(tempOrientation);
-                tempOrientation = box.rotate(0,0,90);
-                if(fs.dimensionFits(tempOrientation))
-                    feasibleOrientations.add(tempOrientation);
-                tempOrientation = box.rotate(0,90,0);
-                if(fs.dimensionFits(tempOrientation))
-                    feasibleOrientations.add(tempOrientation);
-                tempOrientation = box.rotate(0,90,90);
-                if(fs.dimensionFits(tempOrientation))
-                    feasibleOrientations.add(tempOrientation);
-                tempOrientation = box.rotate(90,0,0);
-                if(fs.dimensionFits(tempOrientation))
-                    feasibleOrientations.add(tempOrientation);
-                tempOrientation = box.rotate(90,0,90);
-                if(fs.dimensionFits(tempOrientation))
-                    feasibleOrientations.add(tempOrientation);
-                int randint = (int)(Math.random()*feasibleOrientations.size());
-                /*if(box.getId().equals("267984"))
-                    randint = 3;
-                if(box.getId().equals("1501402"))
-                    randint = 4;*/
-                Cuboid chosenOrientation = feasibleOrientations.get(randint);
-                box.setDims(chosenOrientation);
+            //the first feasible free space in FreeSpaceComparator order, the next ones only when the constraints of the
+            //pallet rule it out
+            FreeSpace3D first = pallet.findFeasibleFreeSpace(box);
+            if(first == null)
+                continue;
+            //TODO: currently only placing at front bottom left point, add attemps for placing at other three points
+            //TODO: currently returns when a first feasible box placement is found, add comparison of multiple feasible placements
+            if(placeInFreeSpace(box, first, pallet))
                 return box;
+            for(FreeSpace3D fs: pallet.getFeasibleFreeSpaces(box)){
+                if(fs != first && placeInFreeSpace(box, fs, pallet))
+                    return box;
             }
         }
         return null;
     }
 
+    //Puts the box in the free space in a random orientation that fits and keeps the constraints, if there is one
+    private boolean placeInFreeSpace(Box box, FreeSpace3D fs, Pallet pallet){
+        OrientationTable orientations = box.getOrientations();
+        int[] feasibleOrientations = new int[orientations.size()];
+        int nbFeasibleOrientations = 0;
+        for(int k = 0; k < orientations.size(); k++){
+            if(fs.dimensionFits(orientations.getWidth(k), orientations.getDepth(k), orientations.getHeight(k))
+                    && pallet.isFeasible(box, fs.getPosition(), orientations.getOrientation(k)))
+                feasibleOrientations[nbFeasibleOrientations++] = k;
+        }
+        if(nbFeasibleOrientations == 0)
+            return false;
+        box.setPosition(fs.getPosition());
+        //randomly finds a box orientation
+        int randint = random.nextInt(nbFeasibleOrientations);
+        /*if(box.getId().equals("267984"))
+            randint = 3;
+        if(box.getId().equals("1501402"))
+            randint = 4;*/
+        Cuboid chosenOrientation = orientations.getOrientation(feasibleOrientations[randint]);
+        box.setDims(chosenOrientation);
+        return true;
+    }
 
-    private List<LayerState> solveSetCovering(Map<Integer, List<LayerState>> layersGroupByHeight) throws IloException {
-        List<LayerState> result = new ArrayList<>();
+
+    //The layers of the builder covering the boxes, selected box by box, or by box type when aggregating
+    private List<LayerState> solveSetCovering(Map<Integer, List<LayerState>> layersGroupByHeight, LayerBuilder builder) {
+        PackingMetrics.Phase setCover = metrics.startPhase("set_cover");
         try {
-            IloCplex setCoveringSolver = new IloCplex();
-            //define objective
-            IloObjective layersUsed = setCoveringSolver.addMinimize();
-            //define constraints
-            Map<String, IloRange> covers = new HashMap<>();
-
-            for(String boxId: boxesToPack.keySet()){
-                covers.put(boxId, setCoveringSolver.addRange(1, 1, boxId));
-            }
-            for(String boxId: boxesToPack.keySet()){
-                setCoveringSolver.intVar(setCoveringSolver.column(layersUsed, 1.0).and(setCoveringSolver.column(covers.get(boxId), 1)), 0, 1, boxId);
+            return configuration.isAggregateBoxTypes()? selectPatterns(layersGroupByHeight, builder): selectLayers(layersGroupByHeight);
+        } finally {
+            setCover.close();
+        }
+    }
+
+    //Cutting stock over box types: every generated layer is a pattern, the number of boxes of each type it holds, and
+    //CuttingStockSolver picks how many times to use each pattern within the number of boxes of each type. Every use
+    //is then laid out like its pattern with the next boxes of each type by id, so two uses never share a box. The
+    //boxes the patterns cannot cover exactly are left uncovered
+    private List<LayerState> selectPatterns(Map<Integer, List<LayerState>> layersGroupByHeight, LayerBuilder builder) {
+        List<BoxType> types = BoxType.group(boxesToPack.values());
+        Map<Integer, BoxType> typesByBox = new HashMap<>();
+        int[] demands = new int[types.size()];
+        for(BoxType type: types){
+            for(Box box: type.getBoxes()){
+                typesByBox.put(box.getIndex(), type);
             }
-            //define variables
-            Map<String, IloIntVar> vars = new HashMap<>();
-            //create model
-            for(Map.Entry<Integer, List<LayerState>> pair: layersGroupByHeight.entrySet()){
-                List<LayerState> layerList = pair.getValue();
-                Integer h = pair.getKey();
-                for(int i = 0; i < layerList.size(); i++){
-                    LayerState layer = layerList.get(i);
-                    //create a column
-                    IloColumn col = setCoveringSolver.column(layersUsed, 1.0);
-                    for(String boxId: layer.getBoxIds()){
-                        col = col.and(setCoveringSolver.column(covers.get(boxId), 1));
-                    }
-                    String varName = "H"+h+"Id"+i;
-                    vars.put(varName, setCoveringSolver.intVar(col, 0, 1, varName));
+            demands[type.getIndex()] = type.getCount();
+        }
+        List<LayerState> layers = new ArrayList<>();
+        List<int[]> patterns = new ArrayList<>();
+        List<Integer> heights = new ArrayList<>(layersGroupByHeight.keySet());
+        Collections.sort(heights);
+        for(Integer height: heights){
+            for(LayerState layer: layersGroupByHeight.get(height)){
+                //type number and count pairs, in order of first placement
+                Map<Integer, Integer> counts = new LinkedHashMap<>();
+                for(Placement p: layer.getPlacements()){
+                    counts.merge(typesByBox.get(p.getBox().getIndex()).getIndex(), 1, Integer::sum);
+                }
+                int[] pattern = new int[counts.size() * 2];
+                int i = 0;
+                for(Map.Entry<Integer, Integer> count: counts.entrySet()){
+                    pattern[i++] = count.getKey();
+                    pattern[i++] = count.getValue();
                 }
+                layers.add(layer);
+                patterns.add(pattern);
             }
-            //solve
-            setCoveringSolver.setParam(	IloCplex.Param.TimeLimit, 3600);
-            setCoveringSolver.solve();
-            System.out.println("Solution status: " + setCoveringSolver.getStatus());
-
-            for(Map.Entry<String, IloIntVar> pair: vars.entrySet()){
-                IloIntVar var = pair.getValue();
-                String varName = pair.getKey();
-                double value = setCoveringSolver.getValue(var);
-                if(value >= 0.9999){
-                    List<String> digits = Arrays.asList(varName.replaceAll("[^-?0-9]+", " ").trim().split(" "));
-                    Integer clusterHeight = Integer.parseInt(digits.get(0));
-                    Integer layerIndex = Integer.parseInt(digits.get(1));
-                    result.add(layersGroupByHeight.get(clusterHeight).get(layerIndex));
+        }
+        CuttingStockSolver solver = new CuttingStockSolver();
+        int[] uses = solver.solve(demands, patterns);
+        metrics.setGauge("box_types", types.size());
+        metrics.setGauge("layer_patterns", patterns.size());
+        int[] nextBox = new int[types.size()];
+        List<LayerState> result = new ArrayList<>();
+        for(int c = 0; c < layers.size(); c++){
+            for(int use = 0; use < uses[c]; use++){
+                LayerState layer = builder.newLayer();
+                for(Placement p: layers.get(c).getPlacements()){
+                    BoxType type = typesByBox.get(p.getBox().getIndex());
+                    //the copy has the dimensions of the placement, which give the height of the layer
+                    Box box = new Box(type.getBoxes().get(nextBox[type.getIndex()]++), p.getOrientation());
+                    Vector3D position = p.getPosition();
+                    layer.updateState(box, new Vector3D(position.getX(), position.getY(), 0), p.getOrientation());
                 }
+                result.add(layer);
             }
-            setCoveringSolver.end();
         }
-        catch ( IloException exc ) {
-            System.err.println("Concert exception '" + exc + "' caught");
+        return result;
+    }
+
+    private List<LayerState> selectLayers(Map<Integer, List<LayerState>> layersGroupByHeight) {
+        List<LayerState> result = new ArrayList<>();
+        //renumber the boxes to pack from 0 and turn every layer into a column of these numbers
+        BitSet boxesToCover = new BitSet();
+        for(Box box: boxesToPack.values()){
+            boxesToCover.set(box.getIndex());
         }
-        Map<String, Integer> boxIds = new HashMap<>();
-        for(LayerState layer:result){
-            for(String boxId: layer.getBoxIds()){
-                    Integer count = boxIds.containsKey(boxId)?boxIds.get(boxId):0;
-                    boxIds.put(boxId, count+1);
-            }
+        int[] boxNumbers = new int[boxesToCover.length()];
+        int nbBoxes = 0;
+        for(int i = boxesToCover.nextSetBit(0); i >= 0; i = boxesToCover.nextSetBit(i + 1)){
+            boxNumbers[i] = nbBoxes++;
         }
-        Map<String, Integer> overCovered= boxIds.entrySet().stream().filter(entry -> entry.getValue() > 1).collect(Collectors.toMap(entry->entry.getKey(), entry->entry.getValue()));
-        List<String> unCovered = new ArrayList<>();
-        for(String boxId: boxesToPack.keySet()){
-            if(!boxIds.containsKey(boxId)){
-                unCovered.add(boxId);
+        List<LayerState> layers = new ArrayList<>();
+        List<int[]> columns = new ArrayList<>();
+        for(List<LayerState> layerList: layersGroupByHeight.values()){
+            for(LayerState layer: layerList){
+                layers.add(layer);
+                columns.add(layer.getBoxIndices().stream().map(i -> boxNumbers[i]).toArray());
             }
         }
+        for(int c: setCoveringSolver.solve(nbBoxes, columns)){
+            result.add(layers.get(c));
+        }
+        if(setCoveringSolver.getStatus() != null)
+            metrics.increment("set_cover_solutions_total{status=\"" + setCoveringSolver.getStatus() + "\"}");
         return result;
     }
 
     private List<List<LayerState>> solveOneDimBinPacking(List<LayerState> selectedLayers){
+        return solveOneDimBinPacking(selectedLayers, palletType.getHeight());
+    }
+
+    private List<List<LayerState>> solveOneDimBinPacking(List<LayerState> selectedLayers, int palletHeight){
+        int[] heights = selectedLayers.stream().mapToInt(LayerState::getLayerHeight).toArray();
+        List<List<Integer>> solution;
+        PackingMetrics.Phase binPacking = metrics.startPhase("bin_packing");
+        try {
+            solution = binPackingSolver.solve(heights, palletHeight);
+        } finally {
+            binPacking.close();
+        }
+        if(binPackingSolver.getStatus() != null)
+            metrics.increment("bin_packing_solutions_total{status=\"" + binPackingSolver.getStatus() + "\"}");
         List<List<LayerState>> bins = new ArrayList<>();
+        for(List<Integer> bin: solution){
+            bins.add(bin.stream().map(selectedLayers::get).collect(Collectors.toList()));
+        }
+        return bins;
+    }
+
+    //Stacks the layers of every bin, largest used area first, checking every box with the constraints of the pallet
+    //type. A layer that breaks a constraint on top of the layers below is tried mirrored, then again on top of the
+    //next layers of its bin. The layers left over are packed into new bins and stacked the same way, so there may be
+    //more bins than given. The first layer of a bin is always kept
+    private List<List<LayerState>> stackBins(List<List<LayerState>> bins, PalletType type){
+        PackingMetrics.Phase stacking = metrics.startPhase("stacking");
         try {
-            IloCplex setCoveringSolver = new IloCplex();
-            //define objective
-            IloObjective binsUsed = setCoveringSolver.addMinimize();
-            //define constraints
-            Map<String, IloRange> covers = new HashMap<>();
-            Map<String, IloRange> boxHeightConstraints = new HashMap<>();
-            for(Integer i = 0; i < selectedLayers.size(); i++){
-                covers.put("layer_" +i.toString(), setCoveringSolver.addRange(1, 1, "layer_" +i.toString()));
-            }
-            for(Integer j = 0; j < selectedLayers.size(); j++){
-                boxHeightConstraints.put("box_"+j.toString(), setCoveringSolver.addRange(0, 2055, "box_"+j.toString()));
-            }
+            return stackBinsWithConstraints(bins, type);
+        } finally {
+            stacking.close();
+        }
+    }
 
-            //define variables
-            Map<Integer, IloIntVar> varsBoxUsed = new HashMap<>();
-            Map<Integer, Map<Integer, IloIntVar>> varsLayerInBox = new HashMap<>();
-            for(Integer i = 0; i < selectedLayers.size(); i++){
-                varsLayerInBox.put(i, new HashMap<>());
-            }
-            for(Integer i = 0; i < selectedLayers.size(); i++){
-                LayerState layer = selectedLayers.get(i);
-                for(Integer j = 0; j < selectedLayers.size(); j++){
-                    //add binary variables x_ij representing layer i in box j
-                    varsLayerInBox.get(j).put(i ,setCoveringSolver.intVar(
-                            setCoveringSolver.column(boxHeightConstraints.get("box_"+j.toString()), -layer.getLayerHeight())
-                            .and(setCoveringSolver.column(covers.get("layer_"+i.toString()), 1)),
-                            0,1, "layer_"+i.toString()+"_in_box_"+j.toString()
-                    ));
-                }
-                varsBoxUsed.put(i,
-                        setCoveringSolver.intVar(setCoveringSolver.column(binsUsed, 1.0)
-                        .and(setCoveringSolver.column(boxHeightConstraints.get("box_"+i.toString()), 2055)), 0, 1, "box_"+i.toString())
-                );
-            }
-            setCoveringSolver.exportModel("test\\oneBin.lp");
-            //solve
-            setCoveringSolver.setParam(	IloCplex.Param.TimeLimit, 3600);
-            setCoveringSolver.solve();
-            System.out.println("Solution status: " + setCoveringSolver.getStatus());
-
-            for(Map.Entry<Integer, IloIntVar> pair: varsBoxUsed.entrySet()){
-                IloIntVar var = pair.getValue();
-                Integer j = pair.getKey();
-                double value = setCoveringSolver.getValue(var);
-                if(value >= 0.9999){
-                    List<LayerState> layers = new ArrayList<>();
-                    for(Map.Entry<Integer, IloIntVar> kv: varsLayerInBox.get(j).entrySet()){
-                        IloIntVar varLayerInBox = kv.getValue();
-                        Integer i = kv.getKey();
-                        double value2 = setCoveringSolver.getValue(varLayerInBox);
-                        if(value2 >= 0.9999){
-                            // layer i in box j
-                            layers.add(selectedLayers.get(i));
+    private List<List<LayerState>> stackBinsWithConstraints(List<List<LayerState>> bins, PalletType type){
+        List<List<LayerState>> stackedBins = new ArrayList<>();
+        while(!bins.isEmpty()){
+            List<LayerState> rejected = new ArrayList<>();
+            for(List<LayerState> bin: bins){
+                List<LayerState> layers = new ArrayList<>(bin);
+                layers.sort(Comparator.comparing(LayerState::getTotalUsedArea).reversed().thenComparing(LayerState::getNbDistinctHeights));
+                ConstraintEngine constraints = new ConstraintEngine(type, configuration);
+                List<LayerState> stacked = new ArrayList<>();
+                int z = 0;
+                boolean progress = true;
+                while(progress && !layers.isEmpty()){
+                    progress = false;
+                    for(Iterator<LayerState> it = layers.iterator(); it.hasNext();){
+                        LayerState layer = it.next();
+                        if(stackLayer(layer, z, constraints, stacked.isEmpty())){
+                            stacked.add(layer);
+                            z += layer.getLayerHeight();
+                            it.remove();
+                            progress = true;
                         }
                     }
-                    bins.add(layers);
                 }
+                stackedBins.add(stacked);
+                rejected.addAll(layers);
             }
-            setCoveringSolver.end();
+            bins = solveOneDimBinPacking(rejected, type.getHeight());
+        }
+        return stackedBins;
+    }
+
+    //Puts the boxes of the layer at height z, in the first of its mirror images where none of them breaks a
+    //constraint. If there is none, the layer is taken back as it was, unless forced
+    private boolean stackLayer(LayerState layer, int z, ConstraintEngine constraints, boolean force){
+        for(int variant = 0; variant < 4; variant++){
+            //go through the mirror images by turning over one axis at a time, the last turn restores the layer
+            if(variant > 0)
+                layer.mirror(variant % 2 == 1, variant % 2 == 0);
+            if(tryStackLayer(layer, z, constraints))
+                return true;
         }
-        catch ( IloException exc ) {
-            System.err.println("Concert exception '" + exc + "' caught");
+        layer.mirror(false, true);
+        if(force){
+            for(Placement p: layer.getPlacements()){
+                p.getPosition().setZ(z);
+                constraints.place(p);
+            }
         }
-        return bins;
+        return force;
+    }
+
+    private boolean tryStackLayer(LayerState layer, int z, ConstraintEngine constraints){
+        int mark = constraints.mark();
+        for(Placement p: layer.getPlacements()){
+            p.getPosition().setZ(z);
+            if(!constraints.tryPlace(p)){
+                constraints.rollback(mark);
+                return false;
+            }
+        }
+        return true;
     }
 
     public void stackLayers(List<LayerState> layers){
         int h_position = 0;
         for(LayerState layer: layers){
-            for(Placement p: layer.getPlacements().values()){
+            for(Placement p: layer.getPlacements()){
                 p.getPosition().setZ(h_position);
             }
             h_position += layer.getLayerHeight();
@@ -413,25 +758,68 @@ public class PalletBuilder {
     }
 
     public void writeBins(List<List<LayerState>> bins) throws IOException{
-        int i = 0;
-        for(List<LayerState> layers: bins){
-            FileWriter fileWriter = new FileWriter("test\\bin"+i+".csv");
-            PrintWriter printWriter = new PrintWriter(fileWriter);
-            for(LayerState layer: layers)
-                printWriter.print(layer.toString3D());
-            printWriter.close();
-            i++;
+        if(!configuration.isWriteResults())
+            return;
+        PackingMetrics.Phase output = metrics.startPhase("output");
+        try {
+            resultWriter.writeBins(bins);
+        } finally {
+            output.close();
+        }
+    }
+
+    public void writePallet(Pallet pallet) throws IOException {
+        if(!configuration.isWriteResults())
+            return;
+        PackingMetrics.Phase output = metrics.startPhase("output");
+        try {
+            resultWriter.writePallet(pallet);
+        } finally {
+            output.close();
         }
     }
 
     public void writeLayers(List<LayerState> layers) throws IOException {
-        int i = 0;
+        if(!configuration.isWriteResults())
+            return;
+        PackingMetrics.Phase output = metrics.startPhase("output");
+        try {
+            resultWriter.writeLayers(layers);
+        } finally {
+            output.close();
+        }
+    }
+
+    private void saveLayerCache() throws IOException {
+        if(ownLayerCache && configuration.getLayerCacheFile() != null)
+            layerCache.save(Paths.get(configuration.getLayerCacheFile()));
+    }
+
+    //Counters, timers and histograms of the runs of this builder
+    public PackingMetrics getMetrics() {
+        return metrics;
+    }
+
+    //The area utilization of the final layers and the rates derived from the counters
+    private void recordRun(List<LayerState> layers, int nbBins){
+        long usedArea = 0, layerArea = 0;
         for(LayerState layer: layers){
-            FileWriter fileWriter = new FileWriter("test\\layer"+i+".csv");
-            PrintWriter printWriter = new PrintWriter(fileWriter);
-            printWriter.print(layer.toString2D());
-            printWriter.close();
-            i++;
+            int area = layer.getTotalUsedArea() + layer.getTotalFreeArea();
+            metrics.record("layer_area_utilization_permille", area == 0? 0: 1000L * layer.getTotalUsedArea() / area);
+            usedArea += layer.getTotalUsedArea();
+            layerArea += area;
+        }
+        metrics.setGauge("layers", layers.size());
+        metrics.setGauge("bins", nbBins);
+        metrics.setGauge("area_utilization", layerArea == 0? 0: (double) usedArea / layerArea);
+        double generationSeconds = metrics.getPhaseSeconds("layer_generation");
+        if(generationSeconds > 0)
+            metrics.setGauge("layer_shuffles_per_second", metrics.getCount("layer_shuffles_total") / generationSeconds);
+        for(String type: new String[]{"SIMPLE", "SHUFFLE"}){
+            long attempts = metrics.getCount("insertion_attempts_total{type=\"" + type + "\"}");
+            if(attempts > 0)
+                metrics.setGauge("insertion_hit_rate{type=\"" + type + "\"}",
+                        (double) metrics.getCount("insertion_hits_total{type=\"" + type + "\"}") / attempts);
         }
     }
 }
@@ -0,0 +1,58 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+//Limits of an anytime layer search. The search stops at the first limit reached and returns the best layer found so far.
+//A value <= 0 disables a limit, but at least the number of shuffles or the time limit has to be set.
+//The deadline is an absolute System.nanoTime value shared by all the searches of an order
+public class SearchBudget {
+    int maxShuffles;
+    long maxNanos;
+    int stallShuffles;
+    long deadline;
+
+    public SearchBudget(int maxShuffles, long maxMillis, int stallShuffles){
+        this(maxShuffles, TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxMillis)), stallShuffles, Long.MAX_VALUE);
+    }
+
+    private SearchBudget(int maxShuffles, long maxNanos, int stallShuffles, long deadline){
+        if(maxShuffles <= 0 && maxNanos <= 0 && deadline == Long.MAX_VALUE)
+            throw new IllegalArgumentException("A search needs a number of shuffles or a time limit");
+        this.maxShuffles = maxShuffles;
+        this.maxNanos = maxNanos;
+        this.stallShuffles = stallShuffles;
+        this.deadline = deadline;
+    }
+
+    public static SearchBudget shuffles(int nbShuffles){
+        return new SearchBudget(nbShuffles, 0, 0);
+    }
+
+    //The same budget, cut at the given deadline
+    public SearchBudget withDeadline(long deadlineNanos){
+        return new SearchBudget(maxShuffles, maxNanos, stallShuffles, Math.min(deadline, deadlineNanos));
+    }
+
+    public int getMaxShuffles() {
+        return maxShuffles;
+    }
+
+    public int getStallShuffles() {
+        return stallShuffles;
+    }
+
+    //The deadline of a search started at the given time
+    public long getDeadline(long startNanos){
+        if(maxNanos <= 0)
+            return deadline;
+        return Math.min(deadline, startNanos + maxNanos);
+    }
+
+    public boolean isExhausted(int nbShuffles){
+        return maxShuffles > 0 && nbShuffles >= maxShuffles;
+    }
+
+    public boolean isStalled(int nbShufflesWithoutImprovement){
+        return stallShuffles > 0 && nbShufflesWithoutImprovement >= stallShuffles;
+    }
+}
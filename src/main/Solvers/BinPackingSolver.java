@@ -0,0 +1,14 @@
+package main.Solvers;
+
+import java.util.List;
+
+//Packs items of the given sizes into the minimum number of bins of the given capacity.
+//Returns the bins as lists of item indices, every item is in exactly one bin
+public interface BinPackingSolver {
+    List<List<Integer>> solve(int[] sizes, int capacity);
+
+    //status of the last solve reported by the backend, e.g. Optimal for CPLEX, null when the solver has none
+    default String getStatus(){
+        return null;
+    }
+}
@@ -0,0 +1,164 @@
+package main.Solvers;
+
+import java.util.*;
+
+//One dimensional bin packing.
+//First fit decreasing gives the first solution, it is optimal as soon as it reaches the L2 lower bound of Martello and
+//Toth. Otherwise a depth first branch and bound over the items in decreasing order improves it within a node limit.
+//Items larger than the capacity get a bin of their own
+public class BranchAndBoundBinPackingSolver implements BinPackingSolver {
+    long nodeLimit;
+    long nbNodes;
+    int[] items;
+    int[] sizes;
+    int capacity;
+    int lowerBound;
+    int[] assignment;
+    int[] bestAssignment;
+    int bestNbBins;
+    int[] residuals;
+
+    public BranchAndBoundBinPackingSolver(long nodeLimit){
+        this.nodeLimit = nodeLimit;
+    }
+
+    @Override
+    public List<List<Integer>> solve(int[] sizes, int capacity) {
+        this.sizes = sizes;
+        this.capacity = capacity;
+        List<List<Integer>> bins = new ArrayList<>();
+        List<Integer> fittingItems = new ArrayList<>();
+        for(int i = 0; i < sizes.length; i++){
+            if(sizes[i] > capacity)
+                bins.add(new ArrayList<>(Collections.singletonList(i)));
+            else
+                fittingItems.add(i);
+        }
+        fittingItems.sort(Comparator.comparing((Integer i) -> sizes[i]).reversed().thenComparing(i -> i));
+        items = fittingItems.stream().mapToInt(i -> i).toArray();
+        if(items.length == 0)
+            return bins;
+
+        bestAssignment = firstFitDecreasing();
+        bestNbBins = getNbBins(bestAssignment);
+        lowerBound = getLowerBoundL2();
+        if(bestNbBins > lowerBound && nodeLimit > 0){
+            nbNodes = 0;
+            assignment = new int[items.length];
+            residuals = new int[items.length];
+            branch(0, 0, Arrays.stream(items).map(i -> sizes[i]).sum());
+        }
+
+        List<List<Integer>> packedBins = new ArrayList<>();
+        for(int b = 0; b < bestNbBins; b++){
+            packedBins.add(new ArrayList<>());
+        }
+        for(int k = 0; k < items.length; k++){
+            packedBins.get(bestAssignment[k]).add(items[k]);
+        }
+        packedBins.addAll(bins);
+        return packedBins;
+    }
+
+    public int getLowerBound(){
+        return lowerBound;
+    }
+
+    private int[] firstFitDecreasing(){
+        int[] result = new int[items.length];
+        int[] binResiduals = new int[items.length];
+        int nbBins = 0;
+        for(int k = 0; k < items.length; k++){
+            int b = 0;
+            while(b < nbBins && binResiduals[b] < sizes[items[k]])
+                b++;
+            if(b == nbBins)
+                binResiduals[nbBins++] = capacity;
+            binResiduals[b] -= sizes[items[k]];
+            result[k] = b;
+        }
+        return result;
+    }
+
+    private int getNbBins(int[] binOfItems){
+        int nbBins = 0;
+        for(int b: binOfItems){
+            nbBins = Math.max(nbBins, b + 1);
+        }
+        return nbBins;
+    }
+
+    //L2 bound: for every threshold k, items larger than capacity - k need a bin each, items larger than capacity / 2
+    //too, and the items between k and capacity / 2 can only use the space left by the latter
+    private int getLowerBoundL2(){
+        int bound = 0;
+        Set<Integer> thresholds = new TreeSet<>();
+        thresholds.add(0);
+        for(int i: items){
+            if(sizes[i] <= capacity / 2)
+                thresholds.add(sizes[i]);
+        }
+        for(int k: thresholds){
+            int nbLarge = 0;
+            int nbMedium = 0;
+            long mediumSize = 0;
+            long smallSize = 0;
+            for(int i: items){
+                int size = sizes[i];
+                if(size > capacity - k){
+                    nbLarge++;
+                }else if(size * 2 > capacity){
+                    nbMedium++;
+                    mediumSize += size;
+                }else if(size >= k){
+                    smallSize += size;
+                }
+            }
+            long spaceLeft = (long) nbMedium * capacity - mediumSize;
+            long extraBins = Math.max(0, (smallSize - spaceLeft + capacity - 1) / capacity);
+            bound = Math.max(bound, nbLarge + nbMedium + (int) extraBins);
+        }
+        return bound;
+    }
+
+    private void branch(int k, int nbBins, long remainingSize){
+        if(bestNbBins == lowerBound || nbNodes >= nodeLimit)
+            return;
+        nbNodes++;
+        if(k == items.length){
+            if(nbBins < bestNbBins){
+                bestNbBins = nbBins;
+                bestAssignment = assignment.clone();
+            }
+            return;
+        }
+        long totalResidual = 0;
+        for(int b = 0; b < nbBins; b++){
+            totalResidual += residuals[b];
+        }
+        long extraBins = Math.max(0, (remainingSize - totalResidual + capacity - 1) / capacity);
+        if(nbBins + extraBins >= bestNbBins)
+            return;
+        int size = sizes[items[k]];
+        for(int b = 0; b < nbBins; b++){
+            if(residuals[b] < size)
+                continue;
+            //bins with the same residual lead to symmetric subtrees
+            boolean symmetric = false;
+            for(int other = 0; other < b && !symmetric; other++){
+                symmetric = residuals[other] == residuals[b];
+            }
+            if(symmetric)
+                continue;
+            residuals[b] -= size;
+            assignment[k] = b;
+            branch(k + 1, nbBins, remainingSize - size);
+            residuals[b] += size;
+        }
+        if(nbBins + 1 < bestNbBins){
+            residuals[nbBins] = capacity - size;
+            assignment[k] = nbBins;
+            branch(k + 1, nbBins + 1, remainingSize - size);
+        }
+    }
+}
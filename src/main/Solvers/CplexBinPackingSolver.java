@@ -0,0 +1,91 @@
+package main.Solvers;
+
+import ilog.concert.*;
+import ilog.cplex.*;
+
+import java.util.*;
+
+//Bin packing with CPLEX, with one binary variable per item and bin pair and one per bin
+//A solve that fails or finds no solution within the time limit throws IllegalStateException, with the status of CPLEX
+//in getStatus when it got that far
+public class CplexBinPackingSolver implements BinPackingSolver {
+    String status;
+
+    @Override
+    public List<List<Integer>> solve(int[] sizes, int capacity) {
+        List<List<Integer>> bins = new ArrayList<>();
+        status = null;
+        IloCplex binPackingSolver = null;
+        try {
+            binPackingSolver = new IloCplex();
+            //define objective
+            IloObjective binsUsed = binPackingSolver.addMinimize();
+            //define constraints
+            Map<String, IloRange> covers = new HashMap<>();
+            Map<String, IloRange> binCapacityConstraints = new HashMap<>();
+            for(Integer i = 0; i < sizes.length; i++){
+                covers.put("item_" +i.toString(), binPackingSolver.addRange(1, 1, "item_" +i.toString()));
+            }
+            for(Integer j = 0; j < sizes.length; j++){
+                binCapacityConstraints.put("bin_"+j.toString(), binPackingSolver.addRange(0, capacity, "bin_"+j.toString()));
+            }
+
+            //define variables
+            Map<Integer, IloIntVar> varsBinUsed = new HashMap<>();
+            Map<Integer, Map<Integer, IloIntVar>> varsItemInBin = new HashMap<>();
+            for(Integer i = 0; i < sizes.length; i++){
+                varsItemInBin.put(i, new HashMap<>());
+            }
+            for(Integer i = 0; i < sizes.length; i++){
+                for(Integer j = 0; j < sizes.length; j++){
+                    //add binary variables x_ij representing item i in bin j
+                    varsItemInBin.get(j).put(i ,binPackingSolver.intVar(
+                            binPackingSolver.column(binCapacityConstraints.get("bin_"+j.toString()), -sizes[i])
+                            .and(binPackingSolver.column(covers.get("item_"+i.toString()), 1)),
+                            0,1, "item_"+i.toString()+"_in_bin_"+j.toString()
+                    ));
+                }
+                varsBinUsed.put(i,
+                        binPackingSolver.intVar(binPackingSolver.column(binsUsed, 1.0)
+                        .and(binPackingSolver.column(binCapacityConstraints.get("bin_"+i.toString()), capacity)), 0, 1, "bin_"+i.toString())
+                );
+            }
+            //solve
+            binPackingSolver.setParam(	IloCplex.Param.TimeLimit, 3600);
+            boolean solved = binPackingSolver.solve();
+            status = binPackingSolver.getStatus().toString();
+            if(!solved)
+                throw new IllegalStateException("CPLEX found no bin packing, status " + status);
+
+            for(Map.Entry<Integer, IloIntVar> pair: varsBinUsed.entrySet()){
+                IloIntVar var = pair.getValue();
+                Integer j = pair.getKey();
+                double value = binPackingSolver.getValue(var);
+                if(value >= 0.9999){
+                    List<Integer> items = new ArrayList<>();
+                    for(Map.Entry<Integer, IloIntVar> kv: varsItemInBin.get(j).entrySet()){
+                        IloIntVar varItemInBin = kv.getValue();
+                        Integer i = kv.getKey();
+                        double value2 = binPackingSolver.getValue(varItemInBin);
+                        if(value2 >= 0.9999){
+                            // item i in bin j
+                            items.add(i);
+                        }
+                    }
+                    bins.add(items);
+                }
+            }
+        } catch (IloException e) {
+            throw new IllegalStateException("CPLEX failed on the bin packing", e);
+        } finally {
+            if(binPackingSolver != null)
+                binPackingSolver.end();
+        }
+        return bins;
+    }
+
+    @Override
+    public String getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,67 @@
+package main.Solvers;
+
+import ilog.concert.*;
+import ilog.cplex.*;
+
+import java.util.*;
+
+//Set covering with CPLEX, every element is covered exactly once either by a column or by its own singleton variable
+//A solve that fails or finds no solution within the time limit throws IllegalStateException, with the status of CPLEX
+//in getStatus when it got that far
+public class CplexSetCoveringSolver implements SetCoveringSolver {
+    String status;
+
+    @Override
+    public List<Integer> solve(int nbElements, List<int[]> columns) {
+        List<Integer> result = new ArrayList<>();
+        status = null;
+        IloCplex setCoveringSolver = null;
+        try {
+            setCoveringSolver = new IloCplex();
+            //define objective
+            IloObjective layersUsed = setCoveringSolver.addMinimize();
+            //define constraints
+            IloRange[] covers = new IloRange[nbElements];
+            for(Integer e = 0; e < nbElements; e++){
+                covers[e] = setCoveringSolver.addRange(1, 1, "element_" + e.toString());
+            }
+            for(Integer e = 0; e < nbElements; e++){
+                setCoveringSolver.intVar(setCoveringSolver.column(layersUsed, 1.0).and(setCoveringSolver.column(covers[e], 1)), 0, 1, "single_" + e.toString());
+            }
+            //define variables
+            IloIntVar[] vars = new IloIntVar[columns.size()];
+            //create model
+            for(Integer c = 0; c < columns.size(); c++){
+                //create a column
+                IloColumn col = setCoveringSolver.column(layersUsed, 1.0);
+                for(int e: columns.get(c)){
+                    col = col.and(setCoveringSolver.column(covers[e], 1));
+                }
+                vars[c] = setCoveringSolver.intVar(col, 0, 1, "column_" + c.toString());
+            }
+            //solve
+            setCoveringSolver.setParam(	IloCplex.Param.TimeLimit, 3600);
+            boolean solved = setCoveringSolver.solve();
+            status = setCoveringSolver.getStatus().toString();
+            if(!solved)
+                throw new IllegalStateException("CPLEX found no set covering, status " + status);
+
+            for(int c = 0; c < vars.length; c++){
+                if(setCoveringSolver.getValue(vars[c]) >= 0.9999){
+                    result.add(c);
+                }
+            }
+        } catch (IloException e) {
+            throw new IllegalStateException("CPLEX failed on the set covering", e);
+        } finally {
+            if(setCoveringSolver != null)
+                setCoveringSolver.end();
+        }
+        return result;
+    }
+
+    @Override
+    public String getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,49 @@
+package main.Solvers;
+
+import java.util.*;
+
+//Covers the demands of item types with patterns that can each be used any number of times, as in cutting stock. A
+//pattern is a sparse list of (type, count) pairs, so it is a layer holding count items of every type listed.
+//Sequential heuristic: the patterns are taken by decreasing number of items, and each one is used as often as the
+//remaining demands allow. A pattern that does not fit the remaining demands never fits later, so one pass is enough.
+//The demands left are returned as the residual, for the caller to cover some other way
+public class CuttingStockSolver {
+    int[] residual;
+
+    //How many times each pattern is used
+    public int[] solve(int[] demands, List<int[]> patterns){
+        residual = demands.clone();
+        int[] sizes = new int[patterns.size()];
+        Integer[] order = new Integer[patterns.size()];
+        for(int p = 0; p < patterns.size(); p++){
+            int[] pattern = patterns.get(p);
+            for(int i = 1; i < pattern.length; i += 2){
+                sizes[p] += pattern[i];
+            }
+            order[p] = p;
+        }
+        Arrays.sort(order, (p1, p2) -> sizes[p1] != sizes[p2]? Integer.compare(sizes[p2], sizes[p1]): Integer.compare(p1, p2));
+        int[] uses = new int[patterns.size()];
+        for(int p: order){
+            int[] pattern = patterns.get(p);
+            if(pattern.length == 0)
+                continue;
+            int times = Integer.MAX_VALUE;
+            for(int i = 0; i < pattern.length; i += 2){
+                times = Math.min(times, residual[pattern[i]] / pattern[i + 1]);
+            }
+            if(times == 0)
+                continue;
+            uses[p] = times;
+            for(int i = 0; i < pattern.length; i += 2){
+                residual[pattern[i]] -= times * pattern[i + 1];
+            }
+        }
+        return uses;
+    }
+
+    //The demands the patterns used by the last solve leave uncovered
+    public int[] getResidual() {
+        return residual;
+    }
+}
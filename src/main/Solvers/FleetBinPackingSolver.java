@@ -0,0 +1,158 @@
+package main.Solvers;
+
+import java.util.*;
+
+//Packs items with a size and a weight into bins of several types, each with its own size, weight capacity and cost, at
+//a low total cost.
+//For every bin type, first fit decreasing opens new bins of that type, then every bin is changed to the cheapest type
+//that holds its items. The cheapest of these solutions is improved by merging two bins whenever their items fit in a
+//bin cheaper than both. An item that fits in no type gets a bin of its own, of the tallest type
+public class FleetBinPackingSolver {
+
+    public static class Bin {
+        int type;
+        List<Integer> items = new ArrayList<>();
+        long size;
+        long weight;
+
+        Bin(int type){
+            this.type = type;
+        }
+
+        void add(int item, int itemSize, int itemWeight){
+            items.add(item);
+            size += itemSize;
+            weight += itemWeight;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public List<Integer> getItems() {
+            return items;
+        }
+    }
+
+    int[] binSizes;
+    int[] binCapacities;
+    double[] binCosts;
+
+    public List<Bin> solve(int[] sizes, int[] weights, int[] binSizes, int[] binCapacities, double[] binCosts){
+        if(binSizes.length == 0)
+            throw new IllegalArgumentException("A fleet needs at least one bin type");
+        this.binSizes = binSizes;
+        this.binCapacities = binCapacities;
+        this.binCosts = binCosts;
+        List<Integer> items = new ArrayList<>();
+        for(int i = 0; i < sizes.length; i++){
+            items.add(i);
+        }
+        items.sort(Comparator.comparing((Integer i) -> sizes[i]).reversed()
+                .thenComparing(Comparator.comparing((Integer i) -> weights[i]).reversed()).thenComparing(i -> i));
+        List<Bin> best = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for(int t = 0; t < binSizes.length; t++){
+            List<Bin> bins = firstFitDecreasing(items, sizes, weights, t);
+            for(Bin bin: bins){
+                int cheapest = getCheapestType(bin.size, bin.weight);
+                if(cheapest >= 0)
+                    bin.type = cheapest;
+            }
+            double cost = getCost(bins);
+            if(cost < bestCost){
+                bestCost = cost;
+                best = bins;
+            }
+        }
+        mergeBins(best);
+        return best;
+    }
+
+    public double getCost(List<Bin> bins){
+        double cost = 0;
+        for(Bin bin: bins){
+            cost += binCosts[bin.type];
+        }
+        return cost;
+    }
+
+    private List<Bin> firstFitDecreasing(List<Integer> items, int[] sizes, int[] weights, int openingType){
+        List<Bin> bins = new ArrayList<>();
+        for(int i: items){
+            Bin target = null;
+            for(Bin bin: bins){
+                if(fits(bin.size + sizes[i], bin.weight + weights[i], bin.type)){
+                    target = bin;
+                    break;
+                }
+            }
+            if(target == null){
+                int type = openingType;
+                if(!fits(sizes[i], weights[i], type))
+                    type = getCheapestType(sizes[i], weights[i]);
+                if(type < 0)
+                    type = getTallestType();
+                target = new Bin(type);
+                bins.add(target);
+            }
+            target.add(i, sizes[i], weights[i]);
+        }
+        return bins;
+    }
+
+    //Merges the pair of bins saving the most until no pair saves anything
+    private void mergeBins(List<Bin> bins){
+        while(true){
+            int bestFirst = -1, bestSecond = -1, bestType = -1;
+            double bestSaving = 1e-9;
+            for(int a = 0; a < bins.size(); a++){
+                for(int b = a + 1; b < bins.size(); b++){
+                    Bin first = bins.get(a);
+                    Bin second = bins.get(b);
+                    int type = getCheapestType(first.size + second.size, first.weight + second.weight);
+                    if(type < 0)
+                        continue;
+                    double saving = binCosts[first.type] + binCosts[second.type] - binCosts[type];
+                    if(saving > bestSaving){
+                        bestSaving = saving;
+                        bestFirst = a;
+                        bestSecond = b;
+                        bestType = type;
+                    }
+                }
+            }
+            if(bestFirst < 0)
+                return;
+            Bin first = bins.get(bestFirst);
+            Bin second = bins.remove(bestSecond);
+            first.items.addAll(second.items);
+            first.size += second.size;
+            first.weight += second.weight;
+            first.type = bestType;
+        }
+    }
+
+    private boolean fits(long size, long weight, int type){
+        return size <= binSizes[type] && weight <= binCapacities[type];
+    }
+
+    //The cheapest type holding the given size and weight, the first one on ties, or -1
+    private int getCheapestType(long size, long weight){
+        int best = -1;
+        for(int t = 0; t < binSizes.length; t++){
+            if(fits(size, weight, t) && (best < 0 || binCosts[t] < binCosts[best]))
+                best = t;
+        }
+        return best;
+    }
+
+    private int getTallestType(){
+        int best = 0;
+        for(int t = 1; t < binSizes.length; t++){
+            if(binSizes[t] > binSizes[best])
+                best = t;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,157 @@
+package main.Solvers;
+
+import java.util.*;
+
+//Greedy set covering with local search.
+//The construction takes the columns by decreasing size and keeps every column disjoint from the ones already selected.
+//The local search then tries to drop a selected column and to cover its elements, together with the uncovered ones,
+//with other columns that give a lower cost. A few randomized constructions are tried after the deterministic one
+public class GreedySetCoveringSolver implements SetCoveringSolver {
+    int nbRestarts;
+    SplittableRandom random;
+
+    public GreedySetCoveringSolver(int nbRestarts, long seed){
+        this.nbRestarts = nbRestarts;
+        this.random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public List<Integer> solve(int nbElements, List<int[]> columns) {
+        int[][] columnsByElement = indexColumns(nbElements, columns);
+        double[] keys = new double[columns.size()];
+        for(int c = 0; c < columns.size(); c++){
+            keys[c] = columns.get(c).length;
+        }
+        int[] bestOwner = null;
+        int bestCost = Integer.MAX_VALUE;
+        for(int r = 0; r <= nbRestarts; r++){
+            int[] owner = construct(nbElements, columns, sortByDecreasingKey(keys));
+            improve(columns, columnsByElement, owner);
+            int cost = getCost(owner);
+            if(cost < bestCost){
+                bestCost = cost;
+                bestOwner = owner;
+            }
+            //perturb the sizes a little for the next construction
+            for(int c = 0; c < columns.size(); c++){
+                keys[c] = columns.get(c).length * (1 + 0.3 * random.nextDouble());
+            }
+        }
+        return getSelectedColumns(bestOwner);
+    }
+
+    private int[][] indexColumns(int nbElements, List<int[]> columns){
+        int[] counts = new int[nbElements];
+        for(int[] column: columns){
+            for(int e: column){
+                counts[e]++;
+            }
+        }
+        int[][] columnsByElement = new int[nbElements][];
+        for(int e = 0; e < nbElements; e++){
+            columnsByElement[e] = new int[counts[e]];
+            counts[e] = 0;
+        }
+        for(int c = 0; c < columns.size(); c++){
+            for(int e: columns.get(c)){
+                columnsByElement[e][counts[e]++] = c;
+            }
+        }
+        return columnsByElement;
+    }
+
+    private Integer[] sortByDecreasingKey(double[] keys){
+        Integer[] order = new Integer[keys.length];
+        for(int c = 0; c < keys.length; c++){
+            order[c] = c;
+        }
+        Arrays.sort(order, (c1, c2) -> keys[c1] != keys[c2]? Double.compare(keys[c2], keys[c1]): Integer.compare(c1, c2));
+        return order;
+    }
+
+    //owner[e] is the selected column covering e, or -1 if e is uncovered
+    private int[] construct(int nbElements, List<int[]> columns, Integer[] order){
+        int[] owner = new int[nbElements];
+        Arrays.fill(owner, -1);
+        for(int c: order){
+            if(columns.get(c).length > 1 && isAvailable(columns.get(c), owner, -1))
+                assign(columns.get(c), owner, c);
+        }
+        return owner;
+    }
+
+    //true if every element of the column is uncovered or covered by the column freed
+    private boolean isAvailable(int[] column, int[] owner, int freed){
+        for(int e: column){
+            if(owner[e] != -1 && owner[e] != freed)
+                return false;
+        }
+        return true;
+    }
+
+    private void assign(int[] column, int[] owner, int c){
+        for(int e: column){
+            owner[e] = c;
+        }
+    }
+
+    private void improve(List<int[]> columns, int[][] columnsByElement, int[] owner){
+        boolean improved = true;
+        while(improved){
+            improved = false;
+            for(int selected: getSelectedColumns(owner)){
+                int[] freedColumn = columns.get(selected);
+                //candidates have to intersect the freed column, the columns inside the uncovered elements only are
+                //already taken by the construction
+                Set<Integer> candidates = new HashSet<>();
+                for(int e: freedColumn){
+                    for(int c: columnsByElement[e]){
+                        if(c != selected && columns.get(c).length > 1 && isAvailable(columns.get(c), owner, selected))
+                            candidates.add(c);
+                    }
+                }
+                if(candidates.isEmpty())
+                    continue;
+                List<Integer> sortedCandidates = new ArrayList<>(candidates);
+                sortedCandidates.sort(Comparator.comparing((Integer c) -> columns.get(c).length).reversed().thenComparing(c -> c));
+                //dropping the column uncovers its elements, each picked column covers its elements at the cost of one
+                int[] trial = owner.clone();
+                for(int e: freedColumn){
+                    trial[e] = -1;
+                }
+                int gain = 1 - freedColumn.length;
+                for(int c: sortedCandidates){
+                    if(isAvailable(columns.get(c), trial, -1)){
+                        assign(columns.get(c), trial, c);
+                        gain += columns.get(c).length - 1;
+                    }
+                }
+                if(gain > 0){
+                    System.arraycopy(trial, 0, owner, 0, owner.length);
+                    improved = true;
+                }
+            }
+        }
+    }
+
+    private int getCost(int[] owner){
+        Set<Integer> selected = new HashSet<>();
+        int cost = 0;
+        for(int c: owner){
+            if(c == -1)
+                cost++;
+            else if(selected.add(c))
+                cost++;
+        }
+        return cost;
+    }
+
+    private List<Integer> getSelectedColumns(int[] owner){
+        Set<Integer> selected = new TreeSet<>();
+        for(int c: owner){
+            if(c != -1)
+                selected.add(c);
+        }
+        return new ArrayList<>(selected);
+    }
+}
@@ -0,0 +1,15 @@
+package main.Solvers;
+
+import java.util.List;
+
+//Selects pairwise disjoint columns to cover the elements 0..nbElements-1. An element left uncovered by the selected
+//columns is packed on its own and costs one, so the goal is to minimize the number of selected columns plus the
+//number of uncovered elements
+public interface SetCoveringSolver {
+    List<Integer> solve(int nbElements, List<int[]> columns);
+
+    //status of the last solve reported by the backend, e.g. Optimal for CPLEX, null when the solver has none
+    default String getStatus(){
+        return null;
+    }
+}
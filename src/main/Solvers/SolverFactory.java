@@ -0,0 +1,49 @@
+package main.Solvers;
+
+import main.utils.PackingConfiguration;
+
+//Creates the solvers named in the configuration. The CPLEX backends are loaded by name so that the pure Java engines
+//do not need the CPLEX library, neither to compile nor to run
+public class SolverFactory {
+    public static SetCoveringSolver createSetCoveringSolver(){
+        return createSetCoveringSolver(PackingConfiguration.getDefault());
+    }
+
+    public static SetCoveringSolver createSetCoveringSolver(PackingConfiguration configuration){
+        return createSetCoveringSolver(configuration.getSetCoveringSolver(), configuration.getSeed());
+    }
+
+    public static SetCoveringSolver createSetCoveringSolver(String type, long seed){
+        if(type.equals("GREEDY"))
+            return new GreedySetCoveringSolver(2, seed);
+        if(type.equals("CPLEX"))
+            return (SetCoveringSolver) loadCplexSolver("main.Solvers.CplexSetCoveringSolver");
+        throw new IllegalArgumentException("Unknown set covering solver " + type);
+    }
+
+    public static BinPackingSolver createBinPackingSolver(){
+        return createBinPackingSolver(PackingConfiguration.getDefault());
+    }
+
+    public static BinPackingSolver createBinPackingSolver(PackingConfiguration configuration){
+        return createBinPackingSolver(configuration.getBinPackingSolver());
+    }
+
+    public static BinPackingSolver createBinPackingSolver(String type){
+        if(type.equals("FFD"))
+            return new BranchAndBoundBinPackingSolver(0);
+        if(type.equals("BRANCH_AND_BOUND"))
+            return new BranchAndBoundBinPackingSolver(1000000);
+        if(type.equals("CPLEX"))
+            return (BinPackingSolver) loadCplexSolver("main.Solvers.CplexBinPackingSolver");
+        throw new IllegalArgumentException("Unknown bin packing solver " + type);
+    }
+
+    private static Object loadCplexSolver(String className){
+        try {
+            return Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("CPLEX solver " + className + " is not available, build with the cplex profile", e);
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package main.State;
+
+import java.util.Arrays;
+
+//This class keeps the free rectangles of a layer as parallel arrays, rectangles are removed by swapping in the last one.
+//The place/segment/prune cycle only works on the arrays and on reusable scratch buffers, so it does not allocate
+//once the buffers have grown to the size of the layer.
+//When a layer gets many free rectangles, a uniform grid over the layer area is built so that placing a box only looks
+//at the rectangles registered in the cells it covers, and the enclosure check of a new rectangle only looks at the
+//cell of its left front corner (any rectangle enclosing it covers that point).
+//While a mark is active every add and remove is journaled, so the store can be rolled back to the mark exactly,
+//including the order of the rectangles
+public class FreeRectangleStore {
+    static final int GRID_SIZE = 16;
+    //below this number of rectangles a linear scan is cheaper than maintaining the grid
+    static final int INDEX_THRESHOLD = 48;
+
+    int areaWidth, areaDepth;
+    int[] x, y, width, depth;
+    int size;
+    //rectangles cut from the free rectangles overlapped by the last placed box
+    int[] newX, newY, newWidth, newDepth;
+    int newSize;
+
+    //grid index, cells are stored column by column and hold rectangle indices
+    boolean indexed = false;
+    int cellWidth, cellDepth;
+    int[][] cells;
+    int[] cellSizes;
+    int[] marks;
+    int epoch;
+    int[] hits;
+    int nbHits;
+
+    //undo journal, one record of JOURNAL_RECORD ints (operation, index, x, y, width, depth) per change
+    static final int JOURNAL_RECORD = 6;
+    static final int OP_ADD = 0, OP_REMOVE = 1;
+    int[] journal;
+    int journalSize;
+    int nbMarks;
+    boolean undoing = false;
+
+    public FreeRectangleStore(int areaWidth, int areaDepth){
+        this.areaWidth = areaWidth;
+        this.areaDepth = areaDepth;
+        x = new int[16];
+        y = new int[16];
+        width = new int[16];
+        depth = new int[16];
+        newX = new int[16];
+        newY = new int[16];
+        newWidth = new int[16];
+        newDepth = new int[16];
+        add(0, 0, areaWidth, areaDepth);
+    }
+
+    public FreeRectangleStore(FreeRectangleStore store){
+        this.areaWidth = store.areaWidth;
+        this.areaDepth = store.areaDepth;
+        int capacity = Math.max(store.size, 16);
+        x = Arrays.copyOf(store.x, capacity);
+        y = Arrays.copyOf(store.y, capacity);
+        width = Arrays.copyOf(store.width, capacity);
+        depth = Arrays.copyOf(store.depth, capacity);
+        newX = new int[16];
+        newY = new int[16];
+        newWidth = new int[16];
+        newDepth = new int[16];
+        size = store.size;
+        if(store.indexed)
+            buildIndex();
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public int getX(int i){ return x[i]; }
+    public int getY(int i){ return y[i]; }
+    public int getWidth(int i){ return width[i]; }
+    public int getDepth(int i){ return depth[i]; }
+
+    public void add(int rx, int ry, int rw, int rd){
+        if(nbMarks > 0 && !undoing)
+            record(OP_ADD, size, rx, ry, rw, rd);
+        if(size == x.length){
+            int capacity = Math.max(16, size * 2);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            width = Arrays.copyOf(width, capacity);
+            depth = Arrays.copyOf(depth, capacity);
+            if(indexed)
+                marks = Arrays.copyOf(marks, capacity);
+        }
+        x[size] = rx;
+        y[size] = ry;
+        width[size] = rw;
+        depth[size] = rd;
+        size++;
+        if(indexed)
+            register(size - 1);
+        else if(size > INDEX_THRESHOLD)
+            buildIndex();
+    }
+
+    public void remove(int i){
+        if(nbMarks > 0 && !undoing)
+            record(OP_REMOVE, i, x[i], y[i], width[i], depth[i]);
+        int last = size - 1;
+        if(indexed){
+            unregister(i);
+            if(i != last)
+                renumber(last, i);
+        }
+        x[i] = x[last];
+        y[i] = y[last];
+        width[i] = width[last];
+        depth[i] = depth[last];
+        size--;
+    }
+
+    //Starts journaling the changes, the returned mark can be passed to rollback or commit.
+    //Marks are nested: the last one taken has to be released first
+    public int mark(){
+        if(journal == null)
+            journal = new int[JOURNAL_RECORD * 16];
+        nbMarks++;
+        return journalSize;
+    }
+
+    //Undoes every change made since the mark and releases it
+    public void rollback(int mark){
+        undoing = true;
+        while(journalSize > mark){
+            journalSize -= JOURNAL_RECORD;
+            int op = journal[journalSize];
+            int i = journal[journalSize + 1];
+            int rx = journal[journalSize + 2], ry = journal[journalSize + 3];
+            int rw = journal[journalSize + 4], rd = journal[journalSize + 5];
+            if(op == OP_ADD){
+                remove(size - 1);
+            }else if(i < size){
+                //the removed rectangle had been replaced by the last one, put it back at i and the last one at the end
+                int cx = x[i], cy = y[i], cw = width[i], cd = depth[i];
+                if(indexed)
+                    unregister(i);
+                x[i] = rx;
+                y[i] = ry;
+                width[i] = rw;
+                depth[i] = rd;
+                if(indexed)
+                    register(i);
+                add(cx, cy, cw, cd);
+            }else{
+                add(rx, ry, rw, rd);
+            }
+        }
+        undoing = false;
+        release();
+    }
+
+    //Keeps the changes made since the mark and releases it
+    public void commit(int mark){
+        release();
+    }
+
+    private void release(){
+        nbMarks--;
+        if(nbMarks == 0)
+            journalSize = 0;
+    }
+
+    private void record(int op, int i, int rx, int ry, int rw, int rd){
+        if(journalSize + JOURNAL_RECORD > journal.length)
+            journal = Arrays.copyOf(journal, journal.length * 2);
+        journal[journalSize] = op;
+        journal[journalSize + 1] = i;
+        journal[journalSize + 2] = rx;
+        journal[journalSize + 3] = ry;
+        journal[journalSize + 4] = rw;
+        journal[journalSize + 5] = rd;
+        journalSize += JOURNAL_RECORD;
+    }
+
+    //true if the rectangle i can hold a w x d bottom in either horizontal orientation
+    public boolean accomodate(int i, int w, int d){
+        return (width[i] >= w && depth[i] >= d) || (width[i] >= d && depth[i] >= w);
+    }
+
+    //Returns the left front most free rectangle that can hold a w x d bottom, or -1 if there is none.
+    //Rectangles at the same position are ranked by width then depth so that the result does not depend on the
+    //storage order
+    public int findLeftFront(int w, int d){
+        int best = -1;
+        for(int i = 0; i < size; i++){
+            if(!accomodate(i, w, d))
+                continue;
+            if(best < 0 || x[i] < x[best]
+                    || (x[i] == x[best] && (y[i] < y[best]
+                    || (y[i] == y[best] && (width[i] > width[best]
+                    || (width[i] == width[best] && depth[i] > depth[best]))))))
+                best = i;
+        }
+        return best;
+    }
+
+    //Removes the space covered by the placed rectangle: every overlapped free rectangle is replaced by its maximal
+    //remainders, and remainders enclosed by another free rectangle are dropped
+    public void place(int px, int py, int pw, int pd){
+        newSize = 0;
+        if(indexed){
+            collectOverlapping(px, py, pw, pd);
+            //removing from the highest index keeps the remaining hits valid, only already removed ones get swapped
+            for(int k = 0; k < nbHits; k++){
+                segment(hits[k], px, py, pw, pd);
+                remove(hits[k]);
+            }
+        }else{
+            for(int i = 0; i < size;){
+                if(!isOverlapping(i, px, py, pw, pd)){
+                    i++;
+                    continue;
+                }
+                segment(i, px, py, pw, pd);
+                //the last rectangle is moved to i, so i is examined again
+                remove(i);
+            }
+        }
+        //final check on the segments, remove any enclosed by a free space the box does not overlap
+        for(int k = 0; k < newSize; k++){
+            if(!isEnclosed(newX[k], newY[k], newWidth[k], newDepth[k]))
+                add(newX[k], newY[k], newWidth[k], newDepth[k]);
+        }
+    }
+
+    private boolean isOverlapping(int i, int px, int py, int pw, int pd){
+        return !(px >= x[i] + width[i] || px + pw <= x[i] || py >= y[i] + depth[i] || py + pd <= y[i]);
+    }
+
+    private void segment(int i, int px, int py, int pw, int pd){
+        //check if left edge is a separating line
+        if(px > x[i])
+            addSegment(x[i], y[i], px - x[i], depth[i]);
+        //check if right edge is a separating line
+        if(px + pw < x[i] + width[i])
+            addSegment(px + pw, y[i], x[i] + width[i] - px - pw, depth[i]);
+        //check if the front edge is a separating line
+        if(py > y[i])
+            addSegment(x[i], y[i], width[i], py - y[i]);
+        //check if the back edge is a separating line
+        if(py + pd < y[i] + depth[i])
+            addSegment(x[i], py + pd, width[i], y[i] + depth[i] - py - pd);
+    }
+
+    private void addSegment(int sx, int sy, int sw, int sd){
+        for(int k = 0; k < newSize; k++){
+            if(newX[k] <= sx && newX[k] + newWidth[k] >= sx + sw && newY[k] <= sy && newY[k] + newDepth[k] >= sy + sd)
+                return;
+        }
+        for(int k = 0; k < newSize;){
+            if(sx <= newX[k] && sx + sw >= newX[k] + newWidth[k] && sy <= newY[k] && sy + sd >= newY[k] + newDepth[k]){
+                newSize--;
+                newX[k] = newX[newSize];
+                newY[k] = newY[newSize];
+                newWidth[k] = newWidth[newSize];
+                newDepth[k] = newDepth[newSize];
+            }else{
+                k++;
+            }
+        }
+        if(newSize == newX.length){
+            int capacity = newSize * 2;
+            newX = Arrays.copyOf(newX, capacity);
+            newY = Arrays.copyOf(newY, capacity);
+            newWidth = Arrays.copyOf(newWidth, capacity);
+            newDepth = Arrays.copyOf(newDepth, capacity);
+        }
+        newX[newSize] = sx;
+        newY[newSize] = sy;
+        newWidth[newSize] = sw;
+        newDepth[newSize] = sd;
+        newSize++;
+    }
+
+    private boolean isEnclosed(int sx, int sy, int sw, int sd){
+        if(indexed){
+            int cell = cellX(sx) * GRID_SIZE + cellY(sy);
+            int[] items = cells[cell];
+            for(int k = 0; k < cellSizes[cell]; k++){
+                int i = items[k];
+                if(x[i] <= sx && x[i] + width[i] >= sx + sw && y[i] <= sy && y[i] + depth[i] >= sy + sd)
+                    return true;
+            }
+            return false;
+        }
+        for(int i = 0; i < size; i++){
+            if(x[i] <= sx && x[i] + width[i] >= sx + sw && y[i] <= sy && y[i] + depth[i] >= sy + sd)
+                return true;
+        }
+        return false;
+    }
+
+    private void buildIndex(){
+        indexed = true;
+        cellWidth = Math.max(1, (areaWidth + GRID_SIZE - 1) / GRID_SIZE);
+        cellDepth = Math.max(1, (areaDepth + GRID_SIZE - 1) / GRID_SIZE);
+        cells = new int[GRID_SIZE * GRID_SIZE][];
+        cellSizes = new int[GRID_SIZE * GRID_SIZE];
+        marks = new int[x.length];
+        hits = new int[16];
+        for(int i = 0; i < size; i++){
+            register(i);
+        }
+    }
+
+    private int cellX(int v){
+        return Math.max(0, Math.min(v / cellWidth, GRID_SIZE - 1));
+    }
+
+    private int cellY(int v){
+        return Math.max(0, Math.min(v / cellDepth, GRID_SIZE - 1));
+    }
+
+    private void register(int i){
+        int cx1 = cellX(x[i] + width[i] - 1), cy1 = cellY(y[i] + depth[i] - 1);
+        for(int cx = cellX(x[i]); cx <= cx1; cx++){
+            for(int cy = cellY(y[i]); cy <= cy1; cy++){
+                int cell = cx * GRID_SIZE + cy;
+                if(cells[cell] == null)
+                    cells[cell] = new int[8];
+                else if(cellSizes[cell] == cells[cell].length)
+                    cells[cell] = Arrays.copyOf(cells[cell], cellSizes[cell] * 2);
+                cells[cell][cellSizes[cell]++] = i;
+            }
+        }
+    }
+
+    private void unregister(int i){
+        int cx1 = cellX(x[i] + width[i] - 1), cy1 = cellY(y[i] + depth[i] - 1);
+        for(int cx = cellX(x[i]); cx <= cx1; cx++){
+            for(int cy = cellY(y[i]); cy <= cy1; cy++){
+                int cell = cx * GRID_SIZE + cy;
+                int[] items = cells[cell];
+                for(int k = 0; k < cellSizes[cell]; k++){
+                    if(items[k] == i){
+                        items[k] = items[--cellSizes[cell]];
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    //the rectangle stored at index from is moved to index to
+    private void renumber(int from, int to){
+        int cx1 = cellX(x[from] + width[from] - 1), cy1 = cellY(y[from] + depth[from] - 1);
+        for(int cx = cellX(x[from]); cx <= cx1; cx++){
+            for(int cy = cellY(y[from]); cy <= cy1; cy++){
+                int cell = cx * GRID_SIZE + cy;
+                int[] items = cells[cell];
+                for(int k = 0; k < cellSizes[cell]; k++){
+                    if(items[k] == from){
+                        items[k] = to;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    //fills hits with the rectangles overlapping the placed one, in decreasing index order
+    private void collectOverlapping(int px, int py, int pw, int pd){
+        nbHits = 0;
+        epoch++;
+        int cx1 = cellX(px + pw - 1), cy1 = cellY(py + pd - 1);
+        for(int cx = cellX(px); cx <= cx1; cx++){
+            for(int cy = cellY(py); cy <= cy1; cy++){
+                int cell = cx * GRID_SIZE + cy;
+                int[] items = cells[cell];
+                for(int k = 0; k < cellSizes[cell]; k++){
+                    int i = items[k];
+                    if(marks[i] == epoch)
+                        continue;
+                    marks[i] = epoch;
+                    if(isOverlapping(i, px, py, pw, pd)){
+                        if(nbHits == hits.length)
+                            hits = Arrays.copyOf(hits, nbHits * 2);
+                        hits[nbHits++] = i;
+                    }
+                }
+            }
+        }
+        for(int k = 1; k < nbHits; k++){
+            int hit = hits[k];
+            int j = k - 1;
+            while(j >= 0 && hits[j] < hit){
+                hits[j + 1] = hits[j];
+                j--;
+            }
+            hits[j + 1] = hit;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package main.State;
+
+import main.PackingObjects.Box;
+import main.PackingObjects.FreeSpace3D;
+import main.PlacementObjects.PositionedRectangle;
+import main.PlacementObjects.Surface;
+
+import java.util.*;
+
+//Free spaces of a pallet bucketed by bottom z. Inside a bucket the spaces are in FreeSpaceComparator order, larger
+//supporting area first then fewer supporting surfaces, and ties stay in insertion order, so iterating the index gives
+//the list a stable sort with FreeSpaceComparator would give.
+//A placement only visits the buckets below the top of the box, and the bucket at its top for the supporting surfaces.
+//A new space inside a space of the same bucket that comes before it is dominated: the segmentation makes many of them,
+//and without constraints depending on the position, a box fitting it fits its container, which comes first. SUPPORT
+//and LOAD_CAPACITY are checked at the left front corner of a space though, so a dominated space may take a box its
+//container cannot. With keepDominated they are kept aside in their own buckets, maintained as the others: never the
+//first feasible space, but among the feasible spaces looked at when the constraints rule out the first one
+public class FreeSpaceIndex {
+    TreeMap<Integer, TreeSet<Node>> spacesByZBottom = new TreeMap<>();
+    TreeMap<Integer, TreeSet<Node>> dominatedByZBottom = new TreeMap<>();
+    HashMap<FreeSpace3D, Node> nodes = new HashMap<>();
+    long nextSequence = 0;
+    boolean keepDominated;
+
+    //The sort keys are copied so that a space can be moved when its supporting surfaces change
+    static class Node {
+        FreeSpace3D space;
+        int supportingArea;
+        int nbSurfaces;
+        long sequence;
+        boolean dominated;
+
+        Node(FreeSpace3D space, long sequence, boolean dominated){
+            this.space = space;
+            this.supportingArea = space.getSupportingArea();
+            this.nbSurfaces = space.getSupportingSurfaceCount();
+            this.sequence = sequence;
+            this.dominated = dominated;
+        }
+    }
+
+    static final Comparator<Node> NODE_ORDER = Comparator.comparingInt((Node n) -> -n.supportingArea)
+            .thenComparingInt(n -> n.nbSurfaces).thenComparingLong(n -> n.sequence);
+
+    public FreeSpaceIndex(){
+        this(false);
+    }
+
+    //keepDominated keeps the dominated spaces for getFeasibleFreeSpaces, see above
+    public FreeSpaceIndex(boolean keepDominated){
+        this.keepDominated = keepDominated;
+    }
+
+    public void add(FreeSpace3D space){
+        insert(new Node(space, nextSequence++, false));
+    }
+
+    private void insert(Node node){
+        getBuckets(node).computeIfAbsent(node.space.getZBottom(), z -> new TreeSet<>(NODE_ORDER)).add(node);
+        nodes.put(node.space, node);
+    }
+
+    private TreeMap<Integer, TreeSet<Node>> getBuckets(Node node){
+        return node.dominated? dominatedByZBottom: spacesByZBottom;
+    }
+
+    public void remove(FreeSpace3D space){
+        Node node = nodes.remove(space);
+        TreeMap<Integer, TreeSet<Node>> buckets = getBuckets(node);
+        TreeSet<Node> bucket = buckets.get(space.getZBottom());
+        bucket.remove(node);
+        if(bucket.isEmpty())
+            buckets.remove(space.getZBottom());
+    }
+
+    public int size(){
+        return nodes.size();
+    }
+
+    //Returns the first space in FreeSpaceComparator order that can hold the box in some orientation, or null
+    public FreeSpace3D findFirstFeasible(Box box){
+        for(TreeSet<Node> bucket: spacesByZBottom.values()){
+            for(Node node: bucket){
+                if(node.space.accomodate(box))
+                    return node.space;
+            }
+        }
+        return null;
+    }
+
+    //All the spaces that can hold the box, the dominated ones kept included, in FreeSpaceComparator order
+    public ArrayList<FreeSpace3D> getFeasibleFreeSpaces(Box box){
+        List<Node> feasibleNodes = new ArrayList<>();
+        for(TreeMap<Integer, TreeSet<Node>> buckets: Arrays.asList(spacesByZBottom, dominatedByZBottom)){
+            for(TreeSet<Node> bucket: buckets.values()){
+                for(Node node: bucket){
+                    if(node.space.accomodate(box))
+                        feasibleNodes.add(node);
+                }
+            }
+        }
+        if(!dominatedByZBottom.isEmpty())
+            feasibleNodes.sort(Comparator.comparingInt((Node n) -> n.space.getZBottom()).thenComparing(NODE_ORDER));
+        ArrayList<FreeSpace3D> feasibleSpaces = new ArrayList<>();
+        for(Node node: feasibleNodes){
+            feasibleSpaces.add(node.space);
+        }
+        return feasibleSpaces;
+    }
+
+    //Segments the spaces overlapping the placed box and adds its top to the supporting surfaces of the spaces lying on it
+    public void place(Box box){
+        ArrayList<FreeSpace3D> freeSpacesToAdd3D = new ArrayList<>();
+        ArrayList<FreeSpace3D> freeSpacesToRemove3D = new ArrayList<>();
+        //a space starting at or above the top of the box cannot overlap it
+        List<Node> overlappingNodes = new ArrayList<>();
+        for(TreeMap<Integer, TreeSet<Node>> buckets: Arrays.asList(spacesByZBottom, dominatedByZBottom)){
+            for(TreeSet<Node> bucket: buckets.headMap(box.getZTop(), false).values()){
+                for(Node node: bucket){
+                    if(node.space.isOverlapping(box))
+                        overlappingNodes.add(node);
+                }
+            }
+        }
+        //segment in insertion order, so that the new spaces are numbered as if the spaces were a list
+        overlappingNodes.sort(Comparator.comparingLong(n -> n.sequence));
+        for(Node node: overlappingNodes){
+            //the box takes part of the space, so it goes even when no piece of it is left
+            freeSpacesToRemove3D.add(node.space);
+            freeSpacesToAdd3D.addAll(node.space.segmentSpace(box));
+        }
+        for(FreeSpace3D fs: freeSpacesToRemove3D){
+            remove(fs);
+        }
+        for(TreeMap<Integer, TreeSet<Node>> buckets: Arrays.asList(spacesByZBottom, dominatedByZBottom)){
+            TreeSet<Node> bucket = buckets.get(box.getZTop());
+            if(bucket == null)
+                continue;
+            List<Node> supportedNodes = new ArrayList<>();
+            for(Node node: bucket){
+                PositionedRectangle pr = node.space.getPositionedBottom().getHorizontalIntersection(box.getTop());
+                if(pr != null){
+                    node.space.addSurface(new Surface(pr));
+                    supportedNodes.add(node);
+                }
+            }
+            //the new surface changes the keys, so the spaces are put back at their new position
+            for(Node node: supportedNodes){
+                bucket.remove(node);
+                nodes.remove(node.space);
+            }
+            for(Node node: supportedNodes){
+                insert(new Node(node.space, node.sequence, node.dominated));
+            }
+        }
+        for(FreeSpace3D fs: freeSpacesToAdd3D){
+            Node node = new Node(fs, nextSequence++, false);
+            node.dominated = isDominated(node);
+            if(!node.dominated || keepDominated && !isRedundant(node))
+                insert(node);
+        }
+    }
+
+    //A dominated space is only worth keeping for a corner no other space has: at the corner of a space containing it,
+    //a box is checked at the same place and fits at least as well
+    private boolean isRedundant(Node node){
+        FreeSpace3D space = node.space;
+        for(TreeMap<Integer, TreeSet<Node>> buckets: Arrays.asList(spacesByZBottom, dominatedByZBottom)){
+            TreeSet<Node> bucket = buckets.get(space.getZBottom());
+            if(bucket == null)
+                continue;
+            for(Node other: bucket){
+                FreeSpace3D container = other.space;
+                if(container.getXLeft() == space.getXLeft() && container.getYFront() == space.getYFront()
+                        && encloses(container, space))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean encloses(FreeSpace3D container, FreeSpace3D space){
+        return container.getXLeft() <= space.getXLeft() && container.getXRight() >= space.getXRight()
+                && container.getYFront() <= space.getYFront() && container.getYBack() >= space.getYBack()
+                && container.getZTop() >= space.getZTop();
+    }
+
+    private boolean isDominated(Node node){
+        TreeSet<Node> bucket = spacesByZBottom.get(node.space.getZBottom());
+        if(bucket == null)
+            return false;
+        FreeSpace3D space = node.space;
+        for(Node before: bucket.headSet(node, false)){
+            if(encloses(before.space, space))
+                return true;
+        }
+        return false;
+    }
+}
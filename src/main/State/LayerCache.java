@@ -0,0 +1,272 @@
+package main.State;
+
+import main.PackingObjects.Box;
+import main.PackingObjects.BoxType;
+import main.PackingObjects.OrientationTable;
+import main.PlacementObjects.Placement;
+import main.PlacementObjects.Vector3D;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+//Best layers found so far for clusters of boxes, shared between orders. A cluster is identified by its signature: the
+//footprint, the weight limit of the layer and the sorted multiset of the standing keys of its boxes, see
+//BoxType.getStandingKey. Boxes with the same standing key are interchangeable in a layer, so a cached layout is
+//replayed onto the boxes of any cluster with the same signature, whatever their ids.
+//The cache keeps the maxEntries signatures used last. save and load keep it in a file across restarts, as a
+//DataOutputStream: a version, the number of entries, then per entry the signature and the layout as int arrays
+public class LayerCache {
+    static final int FILE_VERSION = 2;
+    //ints per box type in a signature: the standing key, then the number of boxes
+    static final int TYPE_FIELDS = 8;
+    //ints per placement in a layout: type number, x, y, width, depth
+    static final int PLACEMENT_FIELDS = 5;
+
+    int maxEntries;
+    LinkedHashMap<Signature, Layout> entries;
+    //the signatures being searched, completed with their layout when the search ends
+    HashMap<Signature, CompletableFuture<Layout>> searches = new HashMap<>();
+
+    //footprint width, depth and weight limit, then the fields of each box type in increasing order
+    static class Signature {
+        int[] values;
+        int hash;
+
+        Signature(int[] values){
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Signature && hash == ((Signature) obj).hash && Arrays.equals(values, ((Signature) obj).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    static class Layout {
+        int usedArea;
+        int[] placements;
+
+        Layout(int usedArea, int[] placements){
+            this.usedArea = usedArea;
+            this.placements = placements;
+        }
+    }
+
+    //The signature of a cluster and the type number of each of its boxes
+    static class Cluster {
+        Signature signature;
+        Map<Box, Integer> types = new IdentityHashMap<>();
+        //boxes of each type, in the order of the cluster
+        List<List<Box>> boxesByType = new ArrayList<>();
+    }
+
+    //A cache with the entries of the file, if given and it exists
+    public static LayerCache open(int maxEntries, Path file) throws IOException {
+        LayerCache cache = new LayerCache(maxEntries);
+        if(file != null)
+            cache.load(file);
+        return cache;
+    }
+
+    public LayerCache(int maxEntries){
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Signature, Layout>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Signature, Layout> eldest) {
+                return size() > LayerCache.this.maxEntries;
+            }
+        };
+    }
+
+    //The cached layout of the cluster replayed onto its boxes in a new layer of the given footprint, or null
+    public LayerState get(List<Box> boxes, int width, int depth, int maxLayerWeight){
+        Cluster cluster = getCluster(boxes, width, depth, maxLayerWeight);
+        Layout layout;
+        synchronized(this){
+            layout = entries.get(cluster.signature);
+        }
+        return layout == null? null: replay(cluster, layout, width, depth);
+    }
+
+    //The cached layout of the cluster replayed onto its boxes, else the layer of the search, kept as put does. When a
+    //cluster of the same signature is being searched by another thread, e.g. for another order of a batch of the packing
+    //service, its layer is waited for and replayed instead of searching again
+    public LayerState get(List<Box> boxes, int width, int depth, int maxLayerWeight, Supplier<LayerState> search){
+        Cluster cluster = getCluster(boxes, width, depth, maxLayerWeight);
+        CompletableFuture<Layout> running;
+        boolean searching = false;
+        synchronized(this){
+            Layout layout = entries.get(cluster.signature);
+            if(layout != null)
+                return replay(cluster, layout, width, depth);
+            running = searches.get(cluster.signature);
+            if(running == null){
+                running = new CompletableFuture<>();
+                searches.put(cluster.signature, running);
+                searching = true;
+            }
+        }
+        if(!searching){
+            //a search that failed gives no layout, then this thread searches on its own
+            Layout layout = running.join();
+            if(layout != null)
+                return replay(cluster, layout, width, depth);
+            return search.get();
+        }
+        Layout layout = null;
+        try {
+            LayerState layer = search.get();
+            layout = getLayout(cluster, layer);
+            if(layout != null)
+                put(cluster.signature, layout);
+            return layer;
+        } finally {
+            synchronized(this){
+                searches.remove(cluster.signature);
+            }
+            running.complete(layout);
+        }
+    }
+
+    //Keeps the layer as the layout of the cluster, unless the cached one covers at least as much area
+    public void put(List<Box> boxes, int width, int depth, int maxLayerWeight, LayerState layer){
+        Cluster cluster = getCluster(boxes, width, depth, maxLayerWeight);
+        Layout layout = getLayout(cluster, layer);
+        if(layout != null)
+            put(cluster.signature, layout);
+    }
+
+    private synchronized void put(Signature signature, Layout layout){
+        Layout cached = entries.get(signature);
+        if(cached == null || cached.usedArea < layout.usedArea)
+            entries.put(signature, layout);
+    }
+
+    //The layout of the layer in the type numbers of the cluster, or null for a layer of other boxes than those of the cluster
+    private static Layout getLayout(Cluster cluster, LayerState layer){
+        int[] placements = new int[layer.getPlacements().size() * PLACEMENT_FIELDS];
+        int i = 0;
+        for(Placement p: layer.getPlacements()){
+            Integer type = cluster.types.get(p.getBox());
+            if(type == null)
+                return null;
+            placements[i++] = type;
+            placements[i++] = p.getPosition().getX();
+            placements[i++] = p.getPosition().getY();
+            placements[i++] = p.getOrientation().getWidth();
+            placements[i++] = p.getOrientation().getDepth();
+        }
+        return new Layout(layer.getTotalUsedArea(), placements);
+    }
+
+    private static LayerState replay(Cluster cluster, Layout layout, int width, int depth){
+        LayerState layer = new LayerState(width, depth);
+        int[] nextBox = new int[cluster.boxesByType.size()];
+        int[] p = layout.placements;
+        for(int i = 0; i < p.length; i += PLACEMENT_FIELDS){
+            int type = p[i];
+            Box box = cluster.boxesByType.get(type).get(nextBox[type]++);
+            OrientationTable orientations = box.getOrientations();
+            int k = 0;
+            while(orientations.getWidth(k) != p[i + 3] || orientations.getDepth(k) != p[i + 4]){
+                k++;
+            }
+            layer.updateState(box, new Vector3D(p[i + 1], p[i + 2], 0), orientations.getOrientation(k));
+        }
+        return layer;
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    private static Cluster getCluster(List<Box> boxes, int width, int depth, int maxLayerWeight){
+        Cluster cluster = new Cluster();
+        TreeMap<int[], List<Box>> boxesByType = new TreeMap<>(LayerCache::compareTypes);
+        for(Box box: boxes){
+            int[] type = BoxType.getStandingKey(box).stream().mapToInt(Integer::intValue).toArray();
+            boxesByType.computeIfAbsent(type, t -> new ArrayList<>()).add(box);
+        }
+        int[] values = new int[3 + boxesByType.size() * TYPE_FIELDS];
+        values[0] = width;
+        values[1] = depth;
+        values[2] = maxLayerWeight;
+        int i = 3;
+        for(Map.Entry<int[], List<Box>> entry: boxesByType.entrySet()){
+            for(Box box: entry.getValue()){
+                cluster.types.put(box, cluster.boxesByType.size());
+            }
+            cluster.boxesByType.add(entry.getValue());
+            System.arraycopy(entry.getKey(), 0, values, i, TYPE_FIELDS - 1);
+            values[i + TYPE_FIELDS - 1] = entry.getValue().size();
+            i += TYPE_FIELDS;
+        }
+        cluster.signature = new Signature(values);
+        return cluster;
+    }
+
+    private static int compareTypes(int[] a, int[] b){
+        for(int i = 0; i < a.length; i++){
+            if(a[i] != b[i])
+                return Integer.compare(a[i], b[i]);
+        }
+        return 0;
+    }
+
+    //Writes the entries, least recently used first so that loading keeps their order
+    public synchronized void save(Path file) throws IOException {
+        if(file.getParent() != null)
+            Files.createDirectories(file.getParent());
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))){
+            out.writeInt(FILE_VERSION);
+            out.writeInt(entries.size());
+            for(Map.Entry<Signature, Layout> entry: entries.entrySet()){
+                writeInts(out, entry.getKey().values);
+                out.writeInt(entry.getValue().usedArea);
+                writeInts(out, entry.getValue().placements);
+            }
+        }
+    }
+
+    //Adds the entries of a file written by save, a missing file adds nothing
+    public synchronized void load(Path file) throws IOException {
+        if(!Files.exists(file))
+            return;
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))){
+            int version = in.readInt();
+            if(version != FILE_VERSION)
+                throw new IOException("Layer cache " + file + " has version " + version + ", expected " + FILE_VERSION);
+            int nbEntries = in.readInt();
+            for(int e = 0; e < nbEntries; e++){
+                Signature signature = new Signature(readInts(in));
+                int usedArea = in.readInt();
+                entries.put(signature, new Layout(usedArea, readInts(in)));
+            }
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for(int value: values){
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for(int i = 0; i < values.length; i++){
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+}
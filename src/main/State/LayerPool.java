@@ -0,0 +1,146 @@
+package main.State;
+
+import main.PlacementObjects.Placement;
+
+import java.util.*;
+
+//Distinct layers. A layer is identified by its height, the bitset of its box numbers and the hash of its geometry, so a
+//duplicate is found with a single hash lookup.
+//Layers covering a subset of the boxes of another layer of the same height can be dropped with removeDominated, see
+//there why this is not done by default.
+//With box types, the boxes of the same standing key (see BoxType.getStandingKey) are interchangeable and layers
+//holding as many boxes of every type at the same places are the same layer. The bitset of a layer then has, for a type
+//with k boxes in the layer, the first k bits of the type set, so a layer covers another when it holds at least as many
+//boxes of every type
+public class LayerPool {
+    LinkedHashMap<Fingerprint, LayerState> layers = new LinkedHashMap<>();
+    //type number of every box number and first bit of every type, null without box types
+    int[] boxTypes;
+    int[] typeOffsets;
+
+    static class Fingerprint {
+        int layerHeight;
+        long[] boxes;
+        int nbBoxes;
+        int geometryHash;
+        int hash;
+
+        Fingerprint(LayerState layer, BitSet boxBits){
+            this.layerHeight = layer.getLayerHeight();
+            this.boxes = boxBits.toLongArray();
+            this.nbBoxes = layer.getNumberOfBoxes();
+            this.geometryHash = layer.getGeometryHash();
+            this.hash = Objects.hash(layerHeight, Arrays.hashCode(boxes), geometryHash);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Fingerprint))
+                return false;
+            Fingerprint fingerprint = (Fingerprint) obj;
+            return hash == fingerprint.hash && layerHeight == fingerprint.layerHeight
+                    && geometryHash == fingerprint.geometryHash && Arrays.equals(boxes, fingerprint.boxes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        //true if every box of this layer is also in the other layer
+        boolean isCoveredBy(Fingerprint fingerprint){
+            //the arrays stop at the last non empty word
+            if(boxes.length > fingerprint.boxes.length)
+                return false;
+            for(int w = 0; w < boxes.length; w++){
+                if((boxes[w] & ~fingerprint.boxes[w]) != 0)
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    public LayerPool(){
+    }
+
+    //A pool of layers of boxes of the given types, see above
+    public LayerPool(int[] boxTypes, int[] typeOffsets){
+        this.boxTypes = boxTypes;
+        this.typeOffsets = typeOffsets;
+    }
+
+    //Adds the layer unless an identical one is already in the pool
+    public boolean add(LayerState layer){
+        return layers.putIfAbsent(new Fingerprint(layer, getBoxBits(layer)), layer) == null;
+    }
+
+    private BitSet getBoxBits(LayerState layer){
+        if(boxTypes == null)
+            return layer.getBoxIndices();
+        BitSet bits = new BitSet();
+        int[] counts = new int[typeOffsets.length];
+        for(Placement p: layer.getPlacements()){
+            int type = boxTypes[p.getBox().getIndex()];
+            bits.set(typeOffsets[type] + counts[type]++);
+        }
+        return bits;
+    }
+
+    //Adds the layers of the other pool after the layers of this one
+    public void addAll(LayerPool pool){
+        for(Map.Entry<Fingerprint, LayerState> entry: pool.layers.entrySet()){
+            layers.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public int size(){
+        return layers.size();
+    }
+
+    public List<LayerState> getLayers(){
+        return new ArrayList<>(layers.values());
+    }
+
+    //Drops every layer whose boxes are all in a kept layer of the same height. Larger layers are kept first, and a
+    //layer is only compared to the kept layers containing its least shared box.
+    //This only preserves the optimum of a true covering, where a box may be in several selected layers. The solvers
+    //select disjoint layers, and once a kept layer conflicts with the selection its dropped subsets are missed
+    public void removeDominated(){
+        Map<Integer, List<Fingerprint>> fingerprintsByHeight = new HashMap<>();
+        for(Fingerprint fingerprint: layers.keySet()){
+            fingerprintsByHeight.computeIfAbsent(fingerprint.layerHeight, h -> new ArrayList<>()).add(fingerprint);
+        }
+        for(List<Fingerprint> fingerprints: fingerprintsByHeight.values()){
+            fingerprints.sort(Comparator.comparing((Fingerprint f) -> f.nbBoxes).reversed()
+                    .thenComparing(f -> layers.get(f).getTotalUsedArea(), Comparator.reverseOrder()));
+            Map<Integer, List<Fingerprint>> keptLayersByBox = new HashMap<>();
+            boolean anyKept = false;
+            for(Fingerprint fingerprint: fingerprints){
+                List<Fingerprint> candidates = null;
+                BitSet boxes = BitSet.valueOf(fingerprint.boxes);
+                for(int box = boxes.nextSetBit(0); box >= 0; box = boxes.nextSetBit(box + 1)){
+                    List<Fingerprint> keptLayers = keptLayersByBox.getOrDefault(box, Collections.emptyList());
+                    if(candidates == null || keptLayers.size() < candidates.size())
+                        candidates = keptLayers;
+                }
+                boolean dominated = candidates == null? anyKept: false;
+                if(candidates != null){
+                    for(Fingerprint candidate: candidates){
+                        if(fingerprint.isCoveredBy(candidate)){
+                            dominated = true;
+                            break;
+                        }
+                    }
+                }
+                if(dominated){
+                    layers.remove(fingerprint);
+                }else{
+                    anyKept = true;
+                    for(int box = boxes.nextSetBit(0); box >= 0; box = boxes.nextSetBit(box + 1)){
+                        keptLayersByBox.computeIfAbsent(box, b -> new ArrayList<>()).add(fingerprint);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -6,30 +6,52 @@ import main.PlacementObjects.Placement;
 import main.PlacementObjects.PositionedRectangle;
 import main.PlacementObjects.Rectangle;
 import main.PlacementObjects.Vector3D;
-import main.utils.PackingConfigurationsSingleton;
+import main.utils.PackingConfiguration;
+import main.utils.ResultWriter;
 
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class LayerState extends State {
-    HashMap<String, Placement> placements;
+    //placements in placement order, used to roll back to a checkpoint and to rebuild the free spaces
+    ArrayList<Placement> placements;
     int numberOfBoxes;
     int layerHeight;
     int totalWeight;
     int totalUsedArea;
     int totalFreeArea;
-    Set<String> boxIds = new HashSet<>();
-    ArrayList<PositionedRectangle> freespaces = new ArrayList<PositionedRectangle>();
+    //sum of the hashes of the placed bottoms, it does not depend on the placement order
+    int geometryHash;
+    //numbers of the placed boxes, see Box.getIndex
+    BitSet boxes = new BitSet();
+    FreeRectangleStore freespaces;
 
+    //State of a layer at a mark, see mark, rollback and commit
+    public static class Checkpoint {
+        int freeSpaceMark;
+        int nbPlacements;
+        int numberOfBoxes;
+        int layerHeight;
+        int totalWeight;
+        int totalUsedArea;
+        int totalFreeArea;
+        int geometryHash;
+    }
+
+    //An empty layer on the default pallet type
     public LayerState(){
-        freespaces.add(new PositionedRectangle(Integer.parseInt(PackingConfigurationsSingleton.getProperty("width")),
-                Integer.parseInt(PackingConfigurationsSingleton.getProperty("depth"))));
+        this(PackingConfiguration.getDefault().getPalletType().getWidth(),
+                PackingConfiguration.getDefault().getPalletType().getDepth());
+    }
+
+    public LayerState(int width, int depth){
+        freespaces = new FreeRectangleStore(width, depth);
         numberOfBoxes = 0;
         layerHeight = 0;
         totalWeight = 0;
         totalUsedArea = 0;
-        totalFreeArea = freespaces.get(0).getArea();
-        placements = new HashMap<>();
+        totalFreeArea = width * depth;
+        placements = new ArrayList<>();
     }
 
     public int getTotalUsedArea() {
@@ -42,7 +64,7 @@ public class LayerState extends State {
 
     public ArrayList<Box> getPackedBoxes() {
         ArrayList<Box> boxes = new ArrayList<>();
-        for(Placement p: placements.values()){
+        for(Placement p: placements){
             boxes.add(p.getBox());
         }
         return boxes;
@@ -50,7 +72,7 @@ public class LayerState extends State {
 
     public HashSet<Integer> getDistinctHeights(){
         HashSet<Integer> distinctHeights = new HashSet<>();
-        for(Placement p: placements.values()){
+        for(Placement p: placements){
             distinctHeights.add(p.getOrientation().getHeight());
         }
         return distinctHeights;
@@ -64,14 +86,31 @@ public class LayerState extends State {
         return numberOfBoxes;
     }
 
+    //ids of the placed boxes, for the output. The box numbers are in getBoxIndices
     public Set<String> getBoxIds() {
+        Set<String> boxIds = new HashSet<>();
+        for(Placement p: placements){
+            boxIds.add(p.getBox().getId());
+        }
         return boxIds;
     }
 
+    public BitSet getBoxIndices() {
+        return boxes;
+    }
+
+    public boolean containsBox(int boxIndex) {
+        return boxes.get(boxIndex);
+    }
+
     public int getTotalWeight() {
         return totalWeight;
     }
 
+    public int getGeometryHash() {
+        return geometryHash;
+    }
+
     public int getLayerHeight() {
         return layerHeight;
     }
@@ -81,93 +120,95 @@ public class LayerState extends State {
     }
 
     public void updateState(Box box, Vector3D position, Cuboid cuboid){
-        placements.put(box.getId(), new Placement(box, position, cuboid));
-        boxIds.add(box.getId());
+        addPlacement(box, position, cuboid);
+        freespaces.place(position.getX(), position.getY(), cuboid.getWidth(), cuboid.getDepth());
+    }
+
+    //Places the boxes as a grid of nbX by nbY boxes in the orientation from (x, y), column by column. The free spaces
+    //are updated once for the whole grid
+    public void placeBlock(List<Box> blockBoxes, int x, int y, Cuboid cuboid, int nbX, int nbY){
+        int i = 0;
+        for(int column = 0; column < nbX; column++){
+            for(int row = 0; row < nbY; row++){
+                addPlacement(blockBoxes.get(i++), new Vector3D(x + column * cuboid.getWidth(), y + row * cuboid.getDepth(), 0), cuboid);
+            }
+        }
+        freespaces.place(x, y, nbX * cuboid.getWidth(), nbY * cuboid.getDepth());
+    }
+
+    private void addPlacement(Box box, Vector3D position, Cuboid cuboid){
+        placements.add(new Placement(box, position, cuboid));
+        boxes.set(box.getIndex());
         numberOfBoxes++;
         totalWeight += box.getWeight();
         totalUsedArea += cuboid.getBottomArea();
         totalFreeArea -= cuboid.getBottomArea();
-        updateFreeSpaces(new PositionedRectangle(cuboid.getWidth(), cuboid.getDepth(), position));
+        geometryHash += hashBottom(position.getX(), position.getY(), cuboid.getWidth(), cuboid.getDepth());
         if(box.getHeight() > getLayerHeight()){
             setLayerHeight(box.getHeight());
         }
     }
 
+    private static int hashBottom(int x, int y, int width, int depth){
+        int h = ((x * 31 + y) * 31 + width) * 31 + depth;
+        //spread the bits so that the sum of several hashes stays well distributed
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
     public void updateFreeSpaces(PositionedRectangle rectangle){
-        //segment each free spaces if necessary
-        ArrayList<PositionedRectangle> freeSpacesToAdd = new ArrayList<>();
-        ArrayList<PositionedRectangle> freeSpacesToRemove = new ArrayList<>();
-        for(PositionedRectangle fs: freespaces)
-        {
-            if(fs.isOverlapping(rectangle)){
-                freeSpacesToRemove.add(fs);
-                List<PositionedRectangle> result = fs.segmentSpace(rectangle);
-                if(!result.isEmpty())
-                {
-                    ArrayList<PositionedRectangle> enclosedFreeSpacesToAdd = new ArrayList<>();
-                    ArrayList<PositionedRectangle> enclosedFreeSpacesInResult = new ArrayList<>();
-                    for(PositionedRectangle fs_to_add: freeSpacesToAdd){
-                        for(PositionedRectangle fs_of_result: result){
-                            if(fs_to_add.enclose(fs_of_result)){
-                                enclosedFreeSpacesInResult.add(fs_of_result);
-                            }
-                            else{
-                                if(fs_of_result.enclose(fs_to_add)){
-                                    enclosedFreeSpacesToAdd.add(fs_to_add);
-                                }
-                            }
-                        }
-                    }
-                    freeSpacesToAdd.removeAll(enclosedFreeSpacesToAdd);
-                    result.removeAll(enclosedFreeSpacesInResult);
-                    freeSpacesToAdd.addAll(result);
-                }
-            }
-        }
+        freespaces.place(rectangle.getXLeft(), rectangle.getYFront(), rectangle.getWidth(), rectangle.getDepth());
+    }
 
-        freespaces.removeAll(freeSpacesToRemove);
-        //final check on freeSpacesToAdd, remove any enclosed ones: this may happen even the added box does not overlap with a freespace
-        ArrayList<PositionedRectangle> enclosedFreeSpacesToAdd = new ArrayList<>();
-        for(PositionedRectangle fs: freespaces)
-        {
-            for(PositionedRectangle fs_to_add: freeSpacesToAdd){
-                if(fs.enclose(fs_to_add)){
-                    enclosedFreeSpacesToAdd.add(fs_to_add);
-                }
-            }
-        }
-        freeSpacesToAdd.removeAll(enclosedFreeSpacesToAdd);
-        freespaces.addAll(freeSpacesToAdd);
+    //Returns the index of the left front most free space that can hold the bottom, or -1 if there is none
+    public int findFeasibleFreeSpace(int width, int depth){
+        return freespaces.findLeftFront(width, depth);
+    }
+
+    public int findFeasibleFreeSpace(Rectangle boxBottom){
+        return freespaces.findLeftFront(boxBottom.getWidth(), boxBottom.getDepth());
+    }
+
+    public int getNbFreeSpaces(){
+        return freespaces.size();
+    }
+
+    public PositionedRectangle getFreeSpace(int index){
+        return new PositionedRectangle(freespaces.getWidth(index), freespaces.getDepth(index),
+                new Vector3D(freespaces.getX(index), freespaces.getY(index), 0));
     }
 
     public ArrayList<PositionedRectangle> getFeasibleFreeSpaces(Rectangle boxBottom){
         ArrayList<PositionedRectangle> feasible2DFreeSpaces = new ArrayList<>();
-        for(PositionedRectangle fs:freespaces){
-            if(fs.accomodate(boxBottom))
-                feasible2DFreeSpaces.add(fs);
+        for(int i = 0; i < freespaces.size(); i++){
+            if(freespaces.accomodate(i, boxBottom.getWidth(), boxBottom.getDepth()))
+                feasible2DFreeSpaces.add(getFreeSpace(i));
         }
         return feasible2DFreeSpaces;
     }
 
 
-    public HashMap<String, Placement> getPlacements() {
+    public List<Placement> getPlacements() {
         return placements;
     }
 
     public String toString2D(){
-        String result = "";
-        for(Placement p: placements.values()){
-            result += p.getBox().getId()+","+p.getOrientation().getWidth()+","+p.getOrientation().getDepth()+","+p.getOrientation().getHeight()+","+p.getPosition().getX()+","+p.getPosition().getY()+"\r\n";
+        StringBuilder result = new StringBuilder();
+        for(Placement p: placements){
+            ResultWriter.appendCsv(result, p, false);
         }
-        return result;
+        return result.toString();
     }
 
     public String toString3D(){
-        String result = "";
-        for(Placement p: placements.values()){
-            result += p.getBox().getId()+","+p.getOrientation().getWidth()+","+p.getOrientation().getDepth()+","+p.getOrientation().getHeight()+","+p.getPosition().getX()+","+p.getPosition().getY()+","+p.getPosition().getZ()+"\r\n";
+        StringBuilder result = new StringBuilder();
+        for(Placement p: placements){
+            ResultWriter.appendCsv(result, p, true);
         }
-        return result;
+        return result.toString();
     }
 
     @Override
@@ -184,24 +225,89 @@ public class LayerState extends State {
             return false;
         if(this.getTotalWeight() != ((LayerState)obj).getTotalWeight())
             return false;
-        if(this.freespaces.size() != ((LayerState)obj).freespaces.size())
+        if(this.getGeometryHash() != ((LayerState)obj).getGeometryHash())
             return false;
-        if(!this.getBoxIds().equals(((LayerState)obj).getBoxIds()))
+        if(!this.getBoxIndices().equals(((LayerState)obj).getBoxIndices()))
             return false;
         return true;
     }
 
     @Override
     public int hashCode(){
+        //the hash of a bitset only depends on the boxes, not on the order they were placed in
         return Objects.hash(this.getLayerHeight(), this.getNumberOfBoxes(), this.getTotalUsedArea(),
-                                       this.getTotalWeight(), this.freespaces.size(),
-                                        Arrays.hashCode(this.getBoxIds().toArray()));
+                                       this.getTotalWeight(), this.getGeometryHash(), this.getBoxIndices().hashCode());
+    }
+
+    //Removes the boxes whose numbers are set in boxIndices
+    public void removeBoxes(BitSet boxIndices) {
+        List<Placement> remainingPlacements = new ArrayList<>();
+        for(Placement p: placements){
+            if(!boxIndices.get(p.getBox().getIndex()))
+                remainingPlacements.add(p);
+        }
+        replay(remainingPlacements);
+    }
+
+    //Turns the layer over the middle of its width and/or of its depth. The boxes keep their places relative to each
+    //other, so the layer stays valid, but it lies differently on the layer below
+    public void mirror(boolean mirrorX, boolean mirrorY){
+        List<Placement> mirroredPlacements = new ArrayList<>();
+        for(Placement p: placements){
+            Vector3D position = p.getPosition();
+            int x = mirrorX? freespaces.areaWidth - position.getX() - p.getOrientation().getWidth(): position.getX();
+            int y = mirrorY? freespaces.areaDepth - position.getY() - p.getOrientation().getDepth(): position.getY();
+            mirroredPlacements.add(new Placement(p.getBox(), new Vector3D(x, y, position.getZ()), p.getOrientation()));
+        }
+        replay(mirroredPlacements);
+    }
+
+    //Rebuilds the layer from the placements so that the free spaces, areas, weight and height stay consistent
+    private void replay(List<Placement> newPlacements){
+        freespaces = new FreeRectangleStore(freespaces.areaWidth, freespaces.areaDepth);
+        totalFreeArea = freespaces.areaWidth * freespaces.areaDepth;
+        numberOfBoxes = 0;
+        layerHeight = 0;
+        totalWeight = 0;
+        totalUsedArea = 0;
+        geometryHash = 0;
+        boxes.clear();
+        placements.clear();
+        for(Placement p: newPlacements){
+            updateState(p.getBox(), p.getPosition(), p.getOrientation());
+        }
+    }
+
+    //Starts a what-if: every placement made after the mark can be undone with rollback, or kept with commit.
+    //Marks are nested, the last one taken has to be released first
+    public Checkpoint mark(){
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.freeSpaceMark = freespaces.mark();
+        checkpoint.nbPlacements = placements.size();
+        checkpoint.numberOfBoxes = numberOfBoxes;
+        checkpoint.layerHeight = layerHeight;
+        checkpoint.totalWeight = totalWeight;
+        checkpoint.totalUsedArea = totalUsedArea;
+        checkpoint.totalFreeArea = totalFreeArea;
+        checkpoint.geometryHash = geometryHash;
+        return checkpoint;
+    }
+
+    public void rollback(Checkpoint checkpoint){
+        freespaces.rollback(checkpoint.freeSpaceMark);
+        while(placements.size() > checkpoint.nbPlacements){
+            Placement p = placements.remove(placements.size() - 1);
+            boxes.clear(p.getBox().getIndex());
+        }
+        numberOfBoxes = checkpoint.numberOfBoxes;
+        layerHeight = checkpoint.layerHeight;
+        totalWeight = checkpoint.totalWeight;
+        totalUsedArea = checkpoint.totalUsedArea;
+        totalFreeArea = checkpoint.totalFreeArea;
+        geometryHash = checkpoint.geometryHash;
     }
 
-    public void removeBoxes(List<String> boxIds) {
-        this.boxIds.removeAll(boxIds);
-        placements.keySet().removeAll(boxIds);
-        numberOfBoxes -= boxIds.size();
-        //TODO: Since the layer is corrupted, don't use other information except boxIds and placements, may need an update to the free space, totalAreaUsed, totalWeight
+    public void commit(Checkpoint checkpoint){
+        freespaces.commit(checkpoint.freeSpaceMark);
     }
 }
@@ -8,9 +8,6 @@ import main.PlacementObjects.Surface;
 import main.PlacementObjects.Vector3D;
 
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -19,8 +16,10 @@ import java.util.Map;
 public class PalletState extends State {
     ArrayList<Box> packedBoxes = new ArrayList<Box>();
     int totalWeight = 0;
-    ArrayList<FreeSpace3D> freespaces = new ArrayList<FreeSpace3D>();
+    FreeSpaceIndex freespaces;
     public PalletState(Pallet pallet){
+        //the constraints checked where the box stands may reject a free space and accept one inside it
+        freespaces = new FreeSpaceIndex(pallet.getConstraints().isPositionDependent());
         freespaces.add(new FreeSpace3D(pallet.getWidth(), pallet.getDepth(), pallet.getHeight(), new Vector3D(0,0,0),
                 pallet, new Surface(new PositionedRectangle(pallet.getWidth(), pallet.getDepth(),new Vector3D(0,0,0)))));
     }
@@ -37,57 +36,33 @@ public class PalletState extends State {
     }
 
     public void updateFreeSpaces(Box box){
-        //segment each free spaces if necessary
-        ArrayList<FreeSpace3D> freeSpacesToAdd3D = new ArrayList<>();
-        ArrayList<FreeSpace3D> freeSpacesToRemove3D = new ArrayList<>();
-        for(FreeSpace3D fs: freespaces)
-        {
-            if(fs.isOverlapping(box)){
-                List<FreeSpace3D> result = fs.segmentSpace(box);
-                if(!result.isEmpty())
-                {
-                    freeSpacesToRemove3D.add(fs);
-                    freeSpacesToAdd3D.addAll(result);
-                }
-            }
-        }
-
-        freespaces.removeAll(freeSpacesToRemove3D);
-        //update supporting surface for each remaining freespaces if necessary
-        for(FreeSpace3D fs: freespaces)
-        {
-            if(fs.getZBottom() == box.getZTop())
-            {
-                PositionedRectangle pr = fs.getPositionedBottom().getHorizontalIntersection(box.getTop());
-                if(pr != null)
-                {
-                    Surface sf = new Surface(pr);
-                    fs.addSurface(sf);
-                }
-            }
-        }
-        freespaces.addAll(freeSpacesToAdd3D);
+        //segment each free spaces if necessary and update the supporting surfaces
+        freespaces.place(box);
     }
 
+    //Feasible free spaces in FreeSpaceComparator order
     public ArrayList<FreeSpace3D> getFeasibleFreeSpaces(Box box) {
-        ArrayList<FreeSpace3D> feasible3DFreeSpaces = new ArrayList<>();
-        for(FreeSpace3D fs:freespaces){
-            if(fs.accomodate(box))
-               feasible3DFreeSpaces.add(fs);
-        }
-        return feasible3DFreeSpaces;
+        return freespaces.getFeasibleFreeSpaces(box);
     }
 
-    public void outputState(){
-        try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter("packed_boxes.txt"));
-            for(Box box: packedBoxes){
-                writer.write(box.toString()+"\n");
-            }
-            writer.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    //The first feasible free space in FreeSpaceComparator order, or null
+    public FreeSpace3D findFeasibleFreeSpace(Box box) {
+        return freespaces.findFirstFeasible(box);
+    }
+
+    //The boxes in the order they were packed
+    public List<Box> getPackedBoxes() {
+        return packedBoxes;
+    }
+
+    //The packed boxes overlapping the given one
+    public List<Box> findOverlappingBoxes(Box box){
+        List<Box> conflictBoxes = new ArrayList<>();
+        for(Box packedBox: packedBoxes){
+            if(packedBox != box && packedBox.isOverlapping(box))
+                conflictBoxes.add(packedBox);
         }
+        return conflictBoxes;
     }
 
     public Map<Box, Box> findOverlappingBoxes(){
@@ -0,0 +1,103 @@
+package main.utils;
+
+import main.PackingObjects.Box;
+
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+//Boxes of a manifest as primitive columns, row i is the box number i. The ids stay in the mapped file and are only
+//decoded by getId, see ManifestLoader
+public class BoxColumns {
+    public static final String[] SUPPORT_TYPES = Box.SUPPORT_TYPES;
+
+    int size;
+    int[] widths;
+    int[] depths;
+    int[] heights;
+    int[] weights;
+    int[] loadCapacities;
+    //index in SUPPORT_TYPES
+    byte[] supportTypes;
+    //position and length of the id of a row in the buffer of its chunk
+    int[] idOffsets;
+    int[] idLengths;
+    MappedByteBuffer[] chunks;
+    //first row of every chunk
+    int[] chunkFirstRows;
+
+    BoxColumns(int size, MappedByteBuffer[] chunks, int[] chunkFirstRows){
+        this.size = size;
+        this.chunks = chunks;
+        this.chunkFirstRows = chunkFirstRows;
+        widths = new int[size];
+        depths = new int[size];
+        heights = new int[size];
+        weights = new int[size];
+        loadCapacities = new int[size];
+        supportTypes = new byte[size];
+        idOffsets = new int[size];
+        idLengths = new int[size];
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public String getId(int row){
+        int chunk = Arrays.binarySearch(chunkFirstRows, row);
+        if(chunk < 0)
+            chunk = -chunk - 2;
+        //empty chunks share their first row with the next one
+        while(chunk + 1 < chunkFirstRows.length && chunkFirstRows[chunk + 1] == row)
+            chunk++;
+        byte[] id = new byte[idLengths[row]];
+        MappedByteBuffer buffer = chunks[chunk];
+        for(int i = 0; i < id.length; i++){
+            id[i] = buffer.get(idOffsets[row] + i);
+        }
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    public int getWidth(int row){
+        return widths[row];
+    }
+
+    public int getDepth(int row){
+        return depths[row];
+    }
+
+    public int getHeight(int row){
+        return heights[row];
+    }
+
+    public int getWeight(int row){
+        return weights[row];
+    }
+
+    public int getLoadCapacity(int row){
+        return loadCapacities[row];
+    }
+
+    public String getSupportType(int row){
+        return SUPPORT_TYPES[supportTypes[row]];
+    }
+
+    //The box of a row, numbered with the row
+    public Box getBox(int row){
+        return new Box(getId(row), row, widths[row], depths[row], heights[row], weights[row], loadCapacities[row],
+                getSupportType(row), null);
+    }
+
+    //The boxes by id, as InputReader.readData returns them
+    public Map<String, Box> toBoxMap(){
+        Map<String, Box> boxes = new HashMap<>();
+        for(int row = 0; row < size; row++){
+            Box box = getBox(row);
+            boxes.put(box.getId(), box);
+        }
+        return boxes;
+    }
+}
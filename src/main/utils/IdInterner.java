@@ -0,0 +1,19 @@
+package main.utils;
+
+import java.util.HashMap;
+
+//Numbers the external box ids 0, 1, 2... in reading order. Box sets are bitsets over these numbers, the boxes keep
+//their ids for the output
+public class IdInterner {
+    HashMap<String, Integer> indices = new HashMap<>();
+
+    //Returns the number of the id, a new id gets the next number
+    public int intern(String id){
+        Integer index = indices.get(id);
+        if(index == null){
+            index = indices.size();
+            indices.put(id, index);
+        }
+        return index;
+    }
+}
@@ -6,22 +6,40 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.HashMap;
 import java.util.Map;
 
 public class InputReader {
+    IdInterner interner = new IdInterner();
 
     public Map<String, Box> readData(String filename)
     {
-        BufferedReader br = null;
+        Map<String, Box> boxes = new HashMap<>();
+        try(BufferedReader br = new BufferedReader(new FileReader(filename))) {
+            boxes = readData(br);
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return boxes;
+    }
+
+    //Reads a manifest in the same tab separated format, a header line then one box per line, e.g. the body of a
+    //request to the packing service. A malformed line throws IllegalArgumentException
+    public Map<String, Box> readData(Reader reader) throws IOException
+    {
+        BufferedReader br = reader instanceof BufferedReader? (BufferedReader) reader: new BufferedReader(reader);
         String line = "";
         String splitBy = "\t";
         Map<String, Box> boxes = new HashMap<>();
-        try {
-            br = new BufferedReader(new FileReader(filename));
-            br.readLine();
-            while ((line = br.readLine()) != null) {
-                String[] attributes = line.split(splitBy);
+        br.readLine();
+        while ((line = br.readLine()) != null) {
+            if(line.trim().isEmpty())
+                continue;
+            String[] attributes = line.split(splitBy);
+            try {
                 String id = attributes[0];
                 int depth = Integer.parseInt(attributes[1]);
                 int width = Integer.parseInt(attributes[2]);
@@ -29,19 +47,9 @@ public class InputReader {
                 int weight = Integer.parseInt(attributes[4]);
                 int loadCapacity = Integer.parseInt(attributes[5]);
                 String supportType = attributes[6];
-                boxes.put(id, new Box(id, width, depth, height, weight, null));
-            }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (br != null) {
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                boxes.put(id, new Box(id, interner.intern(id), width, depth, height, weight, loadCapacity, supportType, null));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Malformed manifest line: " + line, e);
             }
         }
         return boxes;
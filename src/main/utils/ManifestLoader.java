@@ -0,0 +1,207 @@
+package main.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+//Loads a manifest in the InputReader format (a header line, then id, length, width, height, weight, load capacity and
+//support type separated by tabs) into BoxColumns. As in InputReader, lines of whitespace only are skipped and a
+//malformed line throws IllegalArgumentException naming it.
+//The file is memory mapped in chunks cut at line starts. The chunks are read twice in parallel: once to count their
+//rows, which gives the first row of every chunk, then to parse the numbers straight from the bytes into the columns
+public class ManifestLoader {
+    //a mapping is at most 2GB, so chunks are kept well below that
+    static final long MAX_CHUNK_SIZE = 1L << 30;
+    //bytes mapped past the end of a chunk to finish its last line
+    static final int MAX_LINE_LENGTH = 1 << 16;
+    int nbChunks;
+
+    public ManifestLoader(){
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ManifestLoader(int nbChunks){
+        this.nbChunks = Math.max(1, nbChunks);
+    }
+
+    public BoxColumns load(String filename) throws IOException {
+        Path path = Paths.get(filename);
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            long fileSize = channel.size();
+            int n = (int) Math.max(nbChunks, (fileSize + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+            //chunk i owns the lines starting in [i * fileSize / n, (i + 1) * fileSize / n)
+            MappedByteBuffer[] buffers = new MappedByteBuffer[n];
+            int[] starts = new int[n];
+            int[] ends = new int[n];
+            boolean[] reachesEnd = new boolean[n];
+            for(int i = 0; i < n; i++){
+                long from = i * fileSize / n;
+                long to = (i + 1) * fileSize / n;
+                buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(fileSize, to + MAX_LINE_LENGTH) - from);
+                int limit = (int) (to - from);
+                //the first line of the file is the header, and a line started before the chunk belongs to the previous one
+                starts[i] = nextLine(buffers[i], limit, from == 0 || !isLineStart(channel, from));
+                ends[i] = limit;
+                reachesEnd[i] = from + buffers[i].limit() == fileSize;
+            }
+            int[] rowCounts = new int[n];
+            try{
+                IntStream.range(0, n).parallel().forEach(i -> rowCounts[i] = countRows(buffers[i], starts[i], ends[i], reachesEnd[i]));
+            }catch(UncheckedIOException e){
+                throw e.getCause();
+            }
+            int[] firstRows = new int[n];
+            int size = 0;
+            for(int i = 0; i < n; i++){
+                firstRows[i] = size;
+                size += rowCounts[i];
+            }
+            BoxColumns columns = new BoxColumns(size, buffers, firstRows);
+            //the first malformed line of the file is reported, whichever chunk fails first
+            IllegalArgumentException[] errors = new IllegalArgumentException[n];
+            IntStream.range(0, n).parallel().forEach(i -> {
+                try {
+                    parseRows(buffers[i], starts[i], ends[i], firstRows[i], columns);
+                } catch (IllegalArgumentException e) {
+                    errors[i] = e;
+                }
+            });
+            for(IllegalArgumentException error: errors){
+                if(error != null)
+                    throw error;
+            }
+            return columns;
+        }
+    }
+
+    private static boolean isLineStart(FileChannel channel, long position) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position - 1, 1).get(0) == '\n';
+    }
+
+    //Returns the start of the second line of the buffer if skip is set, 0 otherwise
+    private static int nextLine(MappedByteBuffer buffer, int limit, boolean skip){
+        if(!skip)
+            return 0;
+        int position = 0;
+        while(position < limit && buffer.get(position) != '\n')
+            position++;
+        return Math.min(limit, position + 1);
+    }
+
+    //Number of non blank lines starting in [start, end). The last line may run past end, up to the mapped part
+    private static int countRows(MappedByteBuffer buffer, int start, int end, boolean reachesEnd){
+        int rows = 0;
+        int position = start;
+        while(position < end){
+            int lineEnd = findLineEnd(buffer, position, reachesEnd);
+            if(!isBlank(buffer, position, lineEnd))
+                rows++;
+            position = lineEnd + 1;
+        }
+        return rows;
+    }
+
+    //Position of the '\n' ending the line, or the limit of the buffer for the last line of the file
+    private static int findLineEnd(MappedByteBuffer buffer, int position, boolean reachesEnd){
+        int limit = buffer.limit();
+        while(position < limit && buffer.get(position) != '\n')
+            position++;
+        if(position == limit && !reachesEnd)
+            throw new UncheckedIOException(new IOException("A manifest line is longer than " + MAX_LINE_LENGTH + " bytes"));
+        return position;
+    }
+
+    private static void parseRows(MappedByteBuffer buffer, int start, int end, int firstRow, BoxColumns columns){
+        int row = firstRow;
+        int position = start;
+        int[] cursor = new int[1];
+        while(position < end){
+            int next = findLineEnd(buffer, position, true);
+            int lineEnd = next;
+            if(lineEnd > position && buffer.get(lineEnd - 1) == '\r')
+                lineEnd--;
+            if(!isBlank(buffer, position, lineEnd)){
+                try {
+                    int idEnd = fieldEnd(buffer, position, lineEnd);
+                    columns.idOffsets[row] = position;
+                    columns.idLengths[row] = idEnd - position;
+                    cursor[0] = idEnd + 1;
+                    columns.depths[row] = parseInt(buffer, cursor, lineEnd);
+                    columns.widths[row] = parseInt(buffer, cursor, lineEnd);
+                    columns.heights[row] = parseInt(buffer, cursor, lineEnd);
+                    columns.weights[row] = parseInt(buffer, cursor, lineEnd);
+                    columns.loadCapacities[row] = parseInt(buffer, cursor, lineEnd);
+                    columns.supportTypes[row] = parseSupportType(buffer, cursor[0], fieldEnd(buffer, cursor[0], lineEnd));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Malformed manifest line: " + getString(buffer, position, lineEnd), e);
+                }
+                row++;
+            }
+            position = next + 1;
+        }
+    }
+
+    //Whether the bytes are all whitespace or control characters, those String.trim removes
+    private static boolean isBlank(MappedByteBuffer buffer, int from, int to){
+        for(int position = from; position < to; position++){
+            if((buffer.get(position) & 0xff) > ' ')
+                return false;
+        }
+        return true;
+    }
+
+    private static String getString(MappedByteBuffer buffer, int from, int to){
+        byte[] value = new byte[to - from];
+        for(int i = 0; i < value.length; i++){
+            value[i] = buffer.get(from + i);
+        }
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static int fieldEnd(MappedByteBuffer buffer, int position, int lineEnd){
+        while(position < lineEnd && buffer.get(position) != '\t')
+            position++;
+        return position;
+    }
+
+    //Parses the field at cursor[0] and moves the cursor to the next field
+    private static int parseInt(MappedByteBuffer buffer, int[] cursor, int lineEnd){
+        int position = cursor[0];
+        boolean negative = position < lineEnd && buffer.get(position) == '-';
+        if(negative)
+            position++;
+        int value = 0;
+        int digits = 0;
+        while(position < lineEnd && buffer.get(position) != '\t'){
+            int digit = buffer.get(position) - '0';
+            if(digit < 0 || digit > 9)
+                throw new NumberFormatException("Unexpected character '" + (char) buffer.get(position) + "' in a manifest number");
+            value = value * 10 + digit;
+            digits++;
+            position++;
+        }
+        if(digits == 0)
+            throw new NumberFormatException("Missing number in a manifest line");
+        cursor[0] = position + 1;
+        return negative? -value: value;
+    }
+
+    private static byte parseSupportType(MappedByteBuffer buffer, int from, int to){
+        for(byte type = 0; type < BoxColumns.SUPPORT_TYPES.length; type++){
+            String name = BoxColumns.SUPPORT_TYPES[type];
+            boolean matches = name.length() == to - from;
+            for(int i = 0; matches && i < name.length(); i++){
+                matches = buffer.get(from + i) == name.charAt(i);
+            }
+            if(matches)
+                return type;
+        }
+        throw new IllegalArgumentException("Unknown support type " + getString(buffer, from, to));
+    }
+}
@@ -5,11 +5,25 @@ import main.PackingObjects.Box;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 
 public class OutputWriter {
+    Path outputDirectory;
+
+    public OutputWriter(){
+        this(PackingConfiguration.getDefault().getOutputDirectory());
+    }
+
+    public OutputWriter(String outputDirectory){
+        this.outputDirectory = Paths.get(outputDirectory);
+    }
+
     public void OutputBoxes(List<Box> boxes, String output_filename, boolean writeBoxId, boolean writeWidth, boolean writeDepth, boolean writeHeight, boolean writePosition) throws IOException {
-        FileWriter fileWriter = new FileWriter("test\\"+output_filename);
+        Files.createDirectories(outputDirectory);
+        FileWriter fileWriter = new FileWriter(outputDirectory.resolve(output_filename).toFile());
         PrintWriter printWriter = new PrintWriter(fileWriter);
         for(Box box: boxes){
             if(writeBoxId)
@@ -0,0 +1,429 @@
+package main.utils;
+
+import main.Constraints.ConstraintEngine;
+import main.PackingObjects.PalletType;
+
+import java.io.*;
+import java.util.*;
+
+//Settings of a packing run, parsed once into typed values. A configuration is immutable, so concurrent orders can each
+//use their own one, e.g. derived with withOverrides or withPalletType, without any global state.
+//load reads packing.properties from the classpath, or from src/main/resources when it is not on the classpath, then the
+//files given as --config=<file> and the key=value (or --key=value) arguments, each source overriding the previous ones.
+//Pallet types are listed as palletTypes=EUR,US with pallet.EUR.width, pallet.EUR.depth, pallet.EUR.height,
+//pallet.EUR.capacity and optionally pallet.EUR.cost (1 by default) for each of them. Without palletTypes, width, depth,
+//height, capacity and cost give one type named DEFAULT. palletType selects the type used by default, the first one
+//otherwise. packingMode=FLEET packs an order over all the types, see PalletBuilder.buildFleet
+public class PackingConfiguration {
+    static final String RESOURCE = "/packing.properties";
+    static final String SOURCE_TREE_FILE = "src/main/resources/packing.properties";
+    private static volatile PackingConfiguration defaultConfiguration;
+
+    final Properties properties;
+    final LinkedHashMap<String, PalletType> palletTypes = new LinkedHashMap<>();
+    final PalletType palletType;
+    final String packingMode;
+    final List<String> constraints;
+    final double supportAreaRatio;
+    final int nbWorkers;
+    final long seed;
+    final String setCoveringSolver;
+    final String binPackingSolver;
+    final int layerShuffles;
+    final int insertionShuffles;
+    final long layerTimeLimitMs;
+    final long orderTimeLimitMs;
+    final int stallShuffles;
+    final boolean dropDominatedLayers;
+    final int maxLayersPerCluster;
+    final boolean aggregateBoxTypes;
+    final String layerEngine;
+    final int onlineLookahead;
+    final int onlineMaxOpenPallets;
+    final long onlineDecisionTimeLimitMs;
+    final String inputManifest;
+    final String outputDirectory;
+    final String outputFormat;
+    final boolean singleOutputFile;
+    final String metricsFile;
+    final String metricsFormat;
+    final boolean writeResults;
+    final int layerCacheSize;
+    final String layerCacheFile;
+    final int servicePort;
+    final int serviceWorkers;
+    final int serviceQueueCapacity;
+    final int serviceBatchMaxOrders;
+    final long serviceBatchWindowMs;
+    final int serviceSmallOrderBoxes;
+    final String serviceWarmupManifest;
+
+    public PackingConfiguration(Properties properties){
+        this.properties = new Properties();
+        this.properties.putAll(properties);
+        String typeNames = getProperty("palletTypes");
+        if(typeNames == null){
+            palletTypes.put("DEFAULT", new PalletType("DEFAULT", getInt("width"), getInt("depth"), getInt("height"),
+                    getInt("capacity"), getDouble("cost", 1)));
+        }else{
+            for(String name: typeNames.split(",")){
+                name = name.trim();
+                if(name.isEmpty())
+                    continue;
+                String prefix = "pallet." + name + ".";
+                palletTypes.put(name, new PalletType(name, getInt(prefix + "width"), getInt(prefix + "depth"),
+                        getInt(prefix + "height"), getInt(prefix + "capacity"), getDouble(prefix + "cost", 1)));
+            }
+            if(palletTypes.isEmpty())
+                throw new IllegalArgumentException("palletTypes does not name any pallet type");
+        }
+        String palletTypeName = getProperty("palletType");
+        palletType = palletTypeName == null? palletTypes.values().iterator().next(): getPalletType(palletTypeName);
+        packingMode = getProperty("packingMode", "GREEDY");
+        if(!packingMode.equals("GREEDY") && !packingMode.equals("FLEET"))
+            throw new IllegalArgumentException("Unknown packing mode " + packingMode);
+        String constraintNames = getProperty("constraints", String.join(",", ConstraintEngine.DEFAULT_CONSTRAINTS));
+        List<String> names = new ArrayList<>();
+        for(String name: constraintNames.split(",")){
+            if(!name.trim().isEmpty())
+                names.add(name.trim());
+        }
+        constraints = Collections.unmodifiableList(names);
+        supportAreaRatio = getDouble("supportAreaRatio", ConstraintEngine.DEFAULT_SUPPORT_AREA_RATIO);
+        nbWorkers = getInt("nbWorkers", 0);
+        seed = getLong("seed", 0);
+        setCoveringSolver = getProperty("setCoveringSolver", "GREEDY");
+        binPackingSolver = getProperty("binPackingSolver", "BRANCH_AND_BOUND");
+        layerShuffles = getInt("layerShuffles", 40000);
+        insertionShuffles = getInt("insertionShuffles", 20000);
+        layerTimeLimitMs = getLong("layerTimeLimitMs", 0);
+        orderTimeLimitMs = getLong("orderTimeLimitMs", 0);
+        stallShuffles = getInt("stallShuffles", 0);
+        dropDominatedLayers = getBoolean("dropDominatedLayers", false);
+        maxLayersPerCluster = getInt("maxLayersPerCluster", 5000);
+        aggregateBoxTypes = getBoolean("aggregateBoxTypes", true);
+        layerEngine = getProperty("layerEngine", "SHUFFLE");
+        if(!layerEngine.equals("SHUFFLE") && !layerEngine.equals("BLOCK"))
+            throw new IllegalArgumentException("Unknown layer engine " + layerEngine);
+        onlineLookahead = getInt("onlineLookahead", 1);
+        onlineMaxOpenPallets = getInt("onlineMaxOpenPallets", 1);
+        onlineDecisionTimeLimitMs = getLong("onlineDecisionTimeLimitMs", 5);
+        inputManifest = getProperty("inputManifest", "src/main/resources/test_instance.txt").trim();
+        outputDirectory = getProperty("outputDirectory", "test");
+        outputFormat = getProperty("outputFormat", "CSV");
+        singleOutputFile = getBoolean("singleOutputFile", false);
+        metricsFile = getProperty("metricsFile", "").trim().isEmpty()? null: getProperty("metricsFile").trim();
+        metricsFormat = getProperty("metricsFormat", "JSON");
+        if(!metricsFormat.equals("JSON") && !metricsFormat.equals("PROMETHEUS"))
+            throw new IllegalArgumentException("Unknown metrics format " + metricsFormat);
+        writeResults = getBoolean("writeResults", true);
+        layerCacheSize = getInt("layerCacheSize", 1024);
+        layerCacheFile = getProperty("layerCacheFile", "").trim().isEmpty()? null: getProperty("layerCacheFile").trim();
+        servicePort = getInt("servicePort", 8080);
+        serviceWorkers = getInt("serviceWorkers", 1);
+        serviceQueueCapacity = getInt("serviceQueueCapacity", 64);
+        serviceBatchMaxOrders = getInt("serviceBatchMaxOrders", 8);
+        serviceBatchWindowMs = getLong("serviceBatchWindowMs", 0);
+        serviceSmallOrderBoxes = getInt("serviceSmallOrderBoxes", 100);
+        serviceWarmupManifest = getProperty("serviceWarmupManifest", "").trim().isEmpty()? null: getProperty("serviceWarmupManifest").trim();
+        if(serviceWorkers < 1 || serviceQueueCapacity < 1 || serviceBatchMaxOrders < 1)
+            throw new IllegalArgumentException("serviceWorkers, serviceQueueCapacity and serviceBatchMaxOrders must be at least 1");
+    }
+
+    //The configuration of load() with no arguments, loaded on first use. It backs the constructors that do not take
+    //a configuration
+    public static PackingConfiguration getDefault(){
+        PackingConfiguration configuration = defaultConfiguration;
+        if(configuration == null){
+            synchronized(PackingConfiguration.class){
+                configuration = defaultConfiguration;
+                if(configuration == null){
+                    try {
+                        configuration = load();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    defaultConfiguration = configuration;
+                }
+            }
+        }
+        return configuration;
+    }
+
+    public static PackingConfiguration load(String... args) throws IOException {
+        Properties properties = new Properties();
+        InputStream is = PackingConfiguration.class.getResourceAsStream(RESOURCE);
+        if(is == null){
+            File file = new File(SOURCE_TREE_FILE);
+            if(!file.exists())
+                throw new FileNotFoundException("packing.properties is neither on the classpath nor in src/main/resources");
+            is = new FileInputStream(file);
+        }
+        try(InputStream in = is){
+            properties.load(in);
+        }
+        //the files first, so that the key=value arguments override them whatever their order
+        for(String arg: args){
+            if(arg.startsWith("--config=")){
+                try(InputStream in = new FileInputStream(arg.substring("--config=".length()))){
+                    properties.load(in);
+                }
+            }
+        }
+        for(String arg: args){
+            if(arg.startsWith("--config="))
+                continue;
+            String pair = arg.startsWith("--")? arg.substring(2): arg;
+            int equals = pair.indexOf('=');
+            if(equals <= 0)
+                throw new IllegalArgumentException("Expected key=value or --config=<file>, got " + arg);
+            properties.setProperty(pair.substring(0, equals).trim(), pair.substring(equals + 1).trim());
+        }
+        return new PackingConfiguration(properties);
+    }
+
+    //A copy of this configuration with the given properties replaced
+    public PackingConfiguration withOverrides(Map<String, String> overrides){
+        Properties merged = new Properties();
+        merged.putAll(properties);
+        merged.putAll(overrides);
+        return new PackingConfiguration(merged);
+    }
+
+    public PackingConfiguration withPalletType(String name){
+        return withOverrides(Collections.singletonMap("palletType", name));
+    }
+
+    public String getProperty(String key){
+        return properties.getProperty(key);
+    }
+
+    public String getProperty(String key, String defaultValue){
+        return properties.getProperty(key, defaultValue);
+    }
+
+    private int getInt(String key){
+        String value = getProperty(key);
+        if(value == null)
+            throw new IllegalArgumentException("Missing property " + key);
+        return getInt(key, 0);
+    }
+
+    private int getInt(String key, int defaultValue){
+        String value = getProperty(key);
+        if(value == null)
+            return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Property " + key + " is not an integer: " + value);
+        }
+    }
+
+    private long getLong(String key, long defaultValue){
+        String value = getProperty(key);
+        if(value == null)
+            return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Property " + key + " is not an integer: " + value);
+        }
+    }
+
+    private double getDouble(String key, double defaultValue){
+        String value = getProperty(key);
+        if(value == null)
+            return defaultValue;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Property " + key + " is not a number: " + value);
+        }
+    }
+
+    private boolean getBoolean(String key, boolean defaultValue){
+        String value = getProperty(key);
+        if(value == null)
+            return defaultValue;
+        if(!value.trim().equalsIgnoreCase("true") && !value.trim().equalsIgnoreCase("false"))
+            throw new IllegalArgumentException("Property " + key + " is not a boolean: " + value);
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    //The default pallet type
+    public PalletType getPalletType() {
+        return palletType;
+    }
+
+    public PalletType getPalletType(String name) {
+        PalletType type = palletTypes.get(name);
+        if(type == null)
+            throw new IllegalArgumentException("Unknown pallet type " + name);
+        return type;
+    }
+
+    //All the pallet types, in the order of palletTypes
+    public List<PalletType> getPalletTypes() {
+        return Collections.unmodifiableList(new ArrayList<>(palletTypes.values()));
+    }
+
+    //GREEDY or FLEET
+    public String getPackingMode() {
+        return packingMode;
+    }
+
+    //names of the constraints checked when boxes and layers are stacked, see ConstraintEngine
+    public List<String> getConstraints() {
+        return constraints;
+    }
+
+    //share of the bottom of a FULL support box that has to lie on other boxes
+    public double getSupportAreaRatio() {
+        return supportAreaRatio;
+    }
+
+    public int getNbWorkers() {
+        return nbWorkers;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public String getSetCoveringSolver() {
+        return setCoveringSolver;
+    }
+
+    public String getBinPackingSolver() {
+        return binPackingSolver;
+    }
+
+    public int getLayerShuffles() {
+        return layerShuffles;
+    }
+
+    public int getInsertionShuffles() {
+        return insertionShuffles;
+    }
+
+    public long getLayerTimeLimitMs() {
+        return layerTimeLimitMs;
+    }
+
+    public long getOrderTimeLimitMs() {
+        return orderTimeLimitMs;
+    }
+
+    public int getStallShuffles() {
+        return stallShuffles;
+    }
+
+    //drop dominated layers before selecting individual boxes, with aggregateBoxTypes they are always dropped
+    public boolean isDropDominatedLayers() {
+        return dropDominatedLayers;
+    }
+
+    //the largest layers kept of every cluster for set covering of individual boxes, 0 keeps them all
+    public int getMaxLayersPerCluster() {
+        return maxLayersPerCluster;
+    }
+
+    //search layers on a few boxes of every box type and select them by type counts, see main.PackingObjects.BoxType
+    public boolean isAggregateBoxTypes() {
+        return aggregateBoxTypes;
+    }
+
+    //SHUFFLE places the boxes of a layer one by one, BLOCK places grids of same type boxes first, see BlockBuilder
+    public String getLayerEngine() {
+        return layerEngine;
+    }
+
+    public int getOnlineLookahead() {
+        return onlineLookahead;
+    }
+
+    public int getOnlineMaxOpenPallets() {
+        return onlineMaxOpenPallets;
+    }
+
+    public long getOnlineDecisionTimeLimitMs() {
+        return onlineDecisionTimeLimitMs;
+    }
+
+    //manifest packed by MainClass, e.g. inputManifest=orders/today.txt on the command line
+    public String getInputManifest() {
+        return inputManifest;
+    }
+
+    public String getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public String getOutputFormat() {
+        return outputFormat;
+    }
+
+    public boolean isSingleOutputFile() {
+        return singleOutputFile;
+    }
+
+    //file the metrics of a run are written to, null when they are not written
+    public String getMetricsFile() {
+        return metricsFile;
+    }
+
+    //JSON or PROMETHEUS
+    public String getMetricsFormat() {
+        return metricsFormat;
+    }
+
+    //false keeps the layers and bins of a run in memory only, e.g. in the packing service
+    public boolean isWriteResults() {
+        return writeResults;
+    }
+
+    //number of clusters whose best layer is cached, 0 disables the cache
+    public int getLayerCacheSize() {
+        return layerCacheSize;
+    }
+
+    //file the layer cache is loaded from and saved to, or null to keep it in memory only
+    public String getLayerCacheFile() {
+        return layerCacheFile;
+    }
+
+    public int getServicePort() {
+        return servicePort;
+    }
+
+    //number of orders the packing service packs at the same time
+    public int getServiceWorkers() {
+        return serviceWorkers;
+    }
+
+    //orders waiting in the packing service beyond which new ones are turned away
+    public int getServiceQueueCapacity() {
+        return serviceQueueCapacity;
+    }
+
+    //number of small orders the packing service packs together, 1 packs every order on its own
+    public int getServiceBatchMaxOrders() {
+        return serviceBatchMaxOrders;
+    }
+
+    //how long a worker waits for more small orders to batch, 0 only batches the orders already waiting
+    public long getServiceBatchWindowMs() {
+        return serviceBatchWindowMs;
+    }
+
+    //orders of at most this many boxes are batched
+    public int getServiceSmallOrderBoxes() {
+        return serviceSmallOrderBoxes;
+    }
+
+    //manifest packed once when the packing service starts, so that the first orders find the code compiled, or null
+    public String getServiceWarmupManifest() {
+        return serviceWarmupManifest;
+    }
+}
@@ -0,0 +1,167 @@
+package main.utils;
+
+import main.PackedBin;
+import main.PackingObjects.Box;
+import main.PackingObjects.Cuboid;
+import main.PackingObjects.Pallet;
+import main.PlacementObjects.Placement;
+import main.State.LayerState;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//Writes the layers and the bins of a run to the output directory, one file per layer or bin, or one file for all of
+//them with the layer or bin number as first field.
+//CSV rows are id,width,depth,height,x,y for layers, with z added for bins, as in LayerState.toString2D and toString3D.
+//The BINARY format is a DataOutputStream: the number of records, then per record the number of the layer or bin in
+//single file mode, the id (writeUTF) and the same numbers as ints.
+//A pallet packed box by box is written as a bin, to a file named after the pallet
+public class ResultWriter {
+    Path outputDirectory;
+    String format;
+    boolean singleFile;
+
+    public ResultWriter(){
+        this(PackingConfiguration.getDefault());
+    }
+
+    public ResultWriter(PackingConfiguration configuration){
+        this(configuration.getOutputDirectory(), configuration.getOutputFormat(), configuration.isSingleOutputFile());
+    }
+
+    //format is CSV or BINARY
+    public ResultWriter(String outputDirectory, String format, boolean singleFile){
+        if(!format.equals("CSV") && !format.equals("BINARY"))
+            throw new IllegalArgumentException("Unknown output format " + format);
+        this.outputDirectory = Paths.get(outputDirectory);
+        this.format = format;
+        this.singleFile = singleFile;
+    }
+
+    public void writeLayers(List<LayerState> layers) throws IOException {
+        if(singleFile){
+            List<List<Placement>> groups = new ArrayList<>();
+            for(LayerState layer: layers){
+                groups.add(layer.getPlacements());
+            }
+            write("layers", groups, false, true);
+        }else{
+            for(int i = 0; i < layers.size(); i++){
+                write("layer" + i, Collections.singletonList(layers.get(i).getPlacements()), false, false);
+            }
+        }
+    }
+
+    public void writeBins(List<List<LayerState>> bins) throws IOException {
+        if(singleFile){
+            List<List<Placement>> groups = new ArrayList<>();
+            for(List<LayerState> bin: bins){
+                groups.add(getPlacements(bin));
+            }
+            write("bins", groups, true, true);
+        }else{
+            for(int i = 0; i < bins.size(); i++){
+                write("bin" + i, Collections.singletonList(getPlacements(bins.get(i))), true, false);
+            }
+        }
+    }
+
+    //Writes the boxes packed one by one in the pallet to a file named after it, in the rows of a bin
+    public void writePallet(Pallet pallet) throws IOException {
+        List<Placement> placements = new ArrayList<>();
+        for(Box box: pallet.getState().getPackedBoxes()){
+            placements.add(new Placement(box, box.getPosition(), new Cuboid(box.getWidth(), box.getDepth(), box.getHeight())));
+        }
+        write(pallet.getId(), Collections.singletonList(placements), true, false);
+    }
+
+    //Writes the bins as writeBins does, and fleet.csv with one row per bin: bin number, pallet type, its cost, the
+    //height and the weight of the stacked layers
+    public void writeFleet(List<PackedBin> bins) throws IOException {
+        List<List<LayerState>> layers = new ArrayList<>();
+        for(PackedBin bin: bins){
+            layers.add(bin.getLayers());
+        }
+        writeBins(layers);
+        Files.createDirectories(outputDirectory);
+        try(Writer writer = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(outputDirectory.resolve("fleet.csv")), StandardCharsets.UTF_8))){
+            for(int b = 0; b < bins.size(); b++){
+                PackedBin bin = bins.get(b);
+                writer.append(String.valueOf(b)).append(',').append(bin.getPalletType().getName()).append(',')
+                        .append(String.valueOf(bin.getPalletType().getCost())).append(',')
+                        .append(String.valueOf(bin.getHeight())).append(',')
+                        .append(String.valueOf(bin.getWeight())).append("\r\n");
+            }
+        }
+    }
+
+    private static List<Placement> getPlacements(List<LayerState> layers){
+        List<Placement> placements = new ArrayList<>();
+        for(LayerState layer: layers){
+            placements.addAll(layer.getPlacements());
+        }
+        return placements;
+    }
+
+    //Writes the groups of placements to one file, numbering the rows with their group if numbered is set
+    private void write(String name, List<List<Placement>> groups, boolean withZ, boolean numbered) throws IOException {
+        Files.createDirectories(outputDirectory);
+        if(format.equals("CSV")){
+            try(Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    Files.newOutputStream(outputDirectory.resolve(name + ".csv")), StandardCharsets.UTF_8), 1 << 16)){
+                StringBuilder row = new StringBuilder();
+                for(int g = 0; g < groups.size(); g++){
+                    for(Placement p: groups.get(g)){
+                        row.setLength(0);
+                        if(numbered)
+                            row.append(g).append(',');
+                        appendCsv(row, p, withZ);
+                        writer.append(row);
+                    }
+                }
+            }
+        }else{
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(outputDirectory.resolve(name + ".bin")), 1 << 16))){
+                int nbRecords = 0;
+                for(List<Placement> group: groups){
+                    nbRecords += group.size();
+                }
+                out.writeInt(nbRecords);
+                for(int g = 0; g < groups.size(); g++){
+                    for(Placement p: groups.get(g)){
+                        if(numbered)
+                            out.writeInt(g);
+                        out.writeUTF(p.getBox().getId());
+                        out.writeInt(p.getOrientation().getWidth());
+                        out.writeInt(p.getOrientation().getDepth());
+                        out.writeInt(p.getOrientation().getHeight());
+                        out.writeInt(p.getPosition().getX());
+                        out.writeInt(p.getPosition().getY());
+                        if(withZ)
+                            out.writeInt(p.getPosition().getZ());
+                    }
+                }
+            }
+        }
+    }
+
+    public static StringBuilder appendCsv(StringBuilder row, Placement p, boolean withZ){
+        row.append(p.getBox().getId()).append(',')
+                .append(p.getOrientation().getWidth()).append(',')
+                .append(p.getOrientation().getDepth()).append(',')
+                .append(p.getOrientation().getHeight()).append(',')
+                .append(p.getPosition().getX()).append(',')
+                .append(p.getPosition().getY());
+        if(withZ)
+            row.append(',').append(p.getPosition().getZ());
+        return row.append("\r\n");
+    }
+}
@@ -0,0 +1,171 @@
+package main.Constraints;
+
+import main.PackingObjects.Box;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ConstraintEngineTest {
+    static final double DELTA = 1e-9;
+
+    //Two boxes side by side at the bottom, a third one lying on 3/4 of the left one and 1/4 of the right one, and a
+    //fourth one right on top of the third
+    static ConstraintEngine stack(List<String> constraints, int loadCapacity){
+        ConstraintEngine engine = new ConstraintEngine(1000000, constraints, 0.8);
+        engine.place(box("left", 100, 100, 100, 0, loadCapacity, "FULL"), 0, 0, 0, 100, 100, 100);
+        engine.place(box("right", 100, 100, 100, 0, loadCapacity, "FULL"), 100, 0, 0, 100, 100, 100);
+        engine.place(box("middle", 100, 100, 100, 400, Box.UNLIMITED_LOAD_CAPACITY, "FULL"), 25, 0, 100, 100, 100, 100);
+        return engine;
+    }
+
+    @Test
+    public void loadGoesDownByContactShare(){
+        ConstraintEngine engine = stack(ConstraintEngine.DEFAULT_CONSTRAINTS, Box.UNLIMITED_LOAD_CAPACITY);
+        assertEquals(300, engine.items.get(0).load, DELTA);
+        assertEquals(100, engine.items.get(1).load, DELTA);
+        engine.place(box("top", 100, 100, 100, 1000, Box.UNLIMITED_LOAD_CAPACITY, "FULL"), 25, 0, 200, 100, 100, 100);
+        assertEquals(1000, engine.items.get(2).load, DELTA);
+        assertEquals(300 + 750, engine.items.get(0).load, DELTA);
+        assertEquals(100 + 250, engine.items.get(1).load, DELTA);
+        assertEquals(0, engine.items.get(3).load, DELTA);
+        assertEquals(1400, engine.getTotalWeight());
+    }
+
+    @Test
+    public void addedLoadsReachEveryLevelOnce(){
+        ConstraintEngine engine = stack(ConstraintEngine.DEFAULT_CONSTRAINTS, Box.UNLIMITED_LOAD_CAPACITY);
+        //a box on the middle one and on a post standing on the right one, so the right one gets load by two paths
+        engine.place(box("post", 50, 100, 100, 0, Box.UNLIMITED_LOAD_CAPACITY, "FULL"), 125, 0, 100, 50, 100, 100);
+        StackedItem candidate = new StackedItem(box("top", 150, 100, 100, 600, Box.UNLIMITED_LOAD_CAPACITY, "FULL"),
+                25, 0, 200, 150, 100, 100);
+        Map<StackedItem, Double> addedLoads = engine.computeAddedLoads(candidate);
+        assertEquals(4, addedLoads.size());
+        //100 of the 150 wide bottom lie on the middle box, 50 on the post
+        assertEquals(400, addedLoads.get(engine.items.get(2)), DELTA);
+        assertEquals(200, addedLoads.get(engine.items.get(3)), DELTA);
+        assertEquals(300, addedLoads.get(engine.items.get(0)), DELTA);
+        assertEquals(100 + 200, addedLoads.get(engine.items.get(1)), DELTA);
+        assertSame(addedLoads, engine.computeAddedLoads(candidate));
+    }
+
+    @Test
+    public void loadCapacityCountsTheWholeStack(){
+        //the left box bears 10 times its load capacity, 1000 g
+        ConstraintEngine engine = stack(Arrays.asList("LOAD_CAPACITY"), 100);
+        Box top = box("top", 100, 100, 100, 1000, Box.UNLIMITED_LOAD_CAPACITY, "FULL");
+        assertFalse(engine.isFeasible(top, 25, 0, 200, 100, 100, 100));
+        Box light = box("light", 100, 100, 100, 900, Box.UNLIMITED_LOAD_CAPACITY, "FULL");
+        assertTrue(engine.isFeasible(light, 25, 0, 200, 100, 100, 100));
+        assertTrue(stack(Arrays.asList("SUPPORT"), 100).isFeasible(top, 25, 0, 200, 100, 100, 100));
+    }
+
+    @Test
+    public void rollbackRestoresTheLoadsAndTheTops(){
+        ConstraintEngine engine = stack(ConstraintEngine.DEFAULT_CONSTRAINTS, Box.UNLIMITED_LOAD_CAPACITY);
+        int mark = engine.mark();
+        engine.place(box("top", 100, 100, 100, 1000, Box.UNLIMITED_LOAD_CAPACITY, "FULL"), 25, 0, 200, 100, 100, 100);
+        engine.place(box("next", 100, 100, 50, 500, Box.UNLIMITED_LOAD_CAPACITY, "FULL"), 100, 0, 100, 100, 100, 50);
+        engine.rollback(mark);
+        assertEquals(3, engine.getNbPlacements());
+        assertEquals(400, engine.getTotalWeight());
+        assertEquals(300, engine.items.get(0).load, DELTA);
+        assertEquals(100, engine.items.get(1).load, DELTA);
+        assertEquals(0, engine.items.get(2).load, DELTA);
+        assertEquals(new HashSet<>(Arrays.asList(100, 200)), engine.itemsByZTop.keySet());
+        assertEquals(2, engine.itemsByZTop.get(100).size());
+        assertEquals(engine.loadLog.size(), engine.items.size());
+        engine.rollback(0);
+        assertTrue(engine.itemsByZTop.isEmpty());
+        assertTrue(engine.loadLog.isEmpty());
+        assertEquals(0, engine.getTotalWeight());
+    }
+
+    @Test
+    public void rolledBackEngineChecksLikeAFreshOne(){
+        ConstraintEngine engine = stack(Arrays.asList("LOAD_CAPACITY"), 100);
+        Box top = box("top", 100, 100, 100, 1000, Box.UNLIMITED_LOAD_CAPACITY, "FULL");
+        int mark = engine.mark();
+        engine.place(box("light", 100, 100, 100, 900, Box.UNLIMITED_LOAD_CAPACITY, "FULL"), 25, 0, 200, 100, 100, 100);
+        assertFalse(engine.isFeasible(box("more", 10, 10, 10, 100, Box.UNLIMITED_LOAD_CAPACITY, "FULL"), 25, 0, 300, 10, 10, 10));
+        engine.rollback(mark);
+        assertFalse(engine.isFeasible(top, 25, 0, 200, 100, 100, 100));
+        assertTrue(engine.isFeasible(box("light", 100, 100, 100, 900, Box.UNLIMITED_LOAD_CAPACITY, "FULL"), 25, 0, 200, 100, 100, 100));
+    }
+
+    //A 200 wide and 100 deep bottom at height 100, standing on 10 by 10 posts at the given points
+    static boolean isSupported(String supportType, int[][] posts){
+        ConstraintEngine engine = new ConstraintEngine(1000000, Arrays.asList("SUPPORT"), 0.8);
+        for(int[] post: posts){
+            engine.place(box("post", 10, 10, 100, 0, Box.UNLIMITED_LOAD_CAPACITY, "FULL"),
+                    Math.min(post[0] - 5, 190), Math.min(post[1] - 5, 90), 0, 10, 10, 100);
+        }
+        return engine.isFeasible(box("b", 200, 100, 100, 0, Box.UNLIMITED_LOAD_CAPACITY, supportType), 0, 0, 100, 200, 100, 100);
+    }
+
+    static final int[][] CORNERS = {{5, 5}, {195, 5}, {5, 95}, {195, 95}};
+    //the middles of the left and right edges, the short ones of a 200 by 100 bottom
+    static final int[][] SHORT_EDGE_MIDDLES = {{5, 50}, {195, 50}};
+    static final int[][] LONG_EDGE_MIDDLES = {{100, 5}, {100, 95}};
+
+    static int[][] concat(int[][]... points){
+        List<int[]> all = new ArrayList<>();
+        for(int[][] p: points){
+            all.addAll(Arrays.asList(p));
+        }
+        return all.toArray(new int[0][]);
+    }
+
+    @Test
+    public void cornersNeedTheFourCorners(){
+        assertTrue(isSupported("CORNERS", CORNERS));
+        assertFalse(isSupported("CORNERS", Arrays.copyOf(CORNERS, 3)));
+        assertFalse(isSupported("SHORT_EDGES", CORNERS));
+        assertFalse(isSupported("ALL_EDGES", CORNERS));
+        assertFalse(isSupported("FULL", CORNERS));
+    }
+
+    @Test
+    public void shortEdgesNeedTheMiddlesOfTheShortEdges(){
+        assertTrue(isSupported("SHORT_EDGES", concat(CORNERS, SHORT_EDGE_MIDDLES)));
+        assertFalse(isSupported("SHORT_EDGES", concat(CORNERS, LONG_EDGE_MIDDLES)));
+        assertFalse(isSupported("ALL_EDGES", concat(CORNERS, SHORT_EDGE_MIDDLES)));
+        //turned a quarter, the short edges are the front and back ones
+        ConstraintEngine engine = new ConstraintEngine(1000000, Arrays.asList("SUPPORT"), 0.8);
+        for(int[] post: new int[][]{{0, 0}, {90, 0}, {0, 190}, {90, 190}, {45, 0}, {45, 190}}){
+            engine.place(box("post", 10, 10, 100, 0, Box.UNLIMITED_LOAD_CAPACITY, "FULL"), post[0], post[1], 0, 10, 10, 100);
+        }
+        assertTrue(engine.isFeasible(box("b", 100, 200, 100, 0, Box.UNLIMITED_LOAD_CAPACITY, "SHORT_EDGES"), 0, 0, 100, 100, 200, 100));
+    }
+
+    @Test
+    public void allEdgesNeedTheMiddlesOfEveryEdge(){
+        assertTrue(isSupported("ALL_EDGES", concat(CORNERS, SHORT_EDGE_MIDDLES, LONG_EDGE_MIDDLES)));
+        assertFalse(isSupported("ALL_EDGES", concat(CORNERS, SHORT_EDGE_MIDDLES, Arrays.copyOf(LONG_EDGE_MIDDLES, 1))));
+    }
+
+    @Test
+    public void fullNeedsTheSupportAreaRatio(){
+        for(int depth: new int[]{80, 79}){
+            ConstraintEngine engine = new ConstraintEngine(1000000, Arrays.asList("SUPPORT"), 0.8);
+            engine.place(box("base", 200, depth, 100, 0, Box.UNLIMITED_LOAD_CAPACITY, "FULL"), 0, 0, 0, 200, depth, 100);
+            Box box = box("b", 200, 100, 100, 0, Box.UNLIMITED_LOAD_CAPACITY, "FULL");
+            assertEquals("depth " + depth, depth == 80, engine.isFeasible(box, 0, 0, 100, 200, 100, 100));
+        }
+    }
+
+    @Test
+    public void floorSupportsEveryTypeAndNothingSupportsNone(){
+        ConstraintEngine engine = new ConstraintEngine(1000000, Arrays.asList("SUPPORT"), 0.8);
+        for(String supportType: Box.SUPPORT_TYPES){
+            Box box = box("b", 200, 100, 100, 0, Box.UNLIMITED_LOAD_CAPACITY, supportType);
+            assertTrue(supportType, engine.isFeasible(box, 0, 0, 0, 200, 100, 100));
+            assertFalse(supportType, engine.isFeasible(box, 0, 0, 100, 200, 100, 100));
+        }
+    }
+
+    static Box box(String id, int width, int depth, int height, int weight, int loadCapacity, String supportType){
+        return new Box(id, 0, width, depth, height, weight, loadCapacity, supportType, null);
+    }
+}
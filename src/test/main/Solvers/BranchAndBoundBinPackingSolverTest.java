@@ -0,0 +1,73 @@
+package main.Solvers;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class BranchAndBoundBinPackingSolverTest {
+    //first fit decreasing needs 4 bins, 3 are enough: {17, 2}, {10, 6, 3}, {7, 6, 5}
+    static final int[] SIZES = {6, 7, 2, 10, 3, 6, 5, 17};
+    static final int CAPACITY = 19;
+
+    @Test
+    public void firstFitDecreasingWithoutNodes(){
+        List<List<Integer>> bins = new BranchAndBoundBinPackingSolver(0).solve(SIZES, CAPACITY);
+        assertValid(SIZES, CAPACITY, bins);
+        assertEquals(4, bins.size());
+    }
+
+    @Test
+    public void branchAndBoundReachesTheOptimum(){
+        BranchAndBoundBinPackingSolver solver = new BranchAndBoundBinPackingSolver(1000000);
+        List<List<Integer>> bins = solver.solve(SIZES, CAPACITY);
+        assertValid(SIZES, CAPACITY, bins);
+        assertEquals(3, bins.size());
+        assertEquals(3, solver.getLowerBound());
+    }
+
+    @Test
+    public void itemsLargerThanTheCapacityGetABinOfTheirOwn(){
+        int[] sizes = {25, 4, 30, 5};
+        List<List<Integer>> bins = new BranchAndBoundBinPackingSolver(1000).solve(sizes, 20);
+        assertValid(sizes, 20, bins);
+        assertEquals(3, bins.size());
+        assertTrue(bins.contains(Collections.singletonList(0)));
+        assertTrue(bins.contains(Collections.singletonList(2)));
+    }
+
+    @Test
+    public void noItems(){
+        assertTrue(new BranchAndBoundBinPackingSolver(1000).solve(new int[0], 10).isEmpty());
+    }
+
+    @Test
+    public void randomInstancesArePackedValidly(){
+        SplittableRandom random = new SplittableRandom(5);
+        for(int n = 0; n < 20; n++){
+            int[] sizes = random.ints(30, 1, 100).toArray();
+            BranchAndBoundBinPackingSolver solver = new BranchAndBoundBinPackingSolver(10000);
+            List<List<Integer>> bins = solver.solve(sizes, 100);
+            assertValid(sizes, 100, bins);
+            assertTrue(bins.size() >= solver.getLowerBound());
+        }
+    }
+
+    //every item in exactly one bin and no bin over the capacity, unless it holds a single item
+    private static void assertValid(int[] sizes, int capacity, List<List<Integer>> bins){
+        int[] counts = new int[sizes.length];
+        for(List<Integer> bin: bins){
+            assertFalse(bin.isEmpty());
+            int load = 0;
+            for(int i: bin){
+                counts[i]++;
+                load += sizes[i];
+            }
+            assertTrue("bin " + bin + " is over the capacity", load <= capacity || bin.size() == 1);
+        }
+        for(int i = 0; i < sizes.length; i++){
+            assertEquals("item " + i, 1, counts[i]);
+        }
+    }
+}
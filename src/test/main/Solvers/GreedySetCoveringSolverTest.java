@@ -0,0 +1,63 @@
+package main.Solvers;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class GreedySetCoveringSolverTest {
+
+    @Test
+    public void selectsAPartitionWhenThereIsOne(){
+        List<int[]> columns = Arrays.asList(
+                new int[]{0, 3}, new int[]{0, 1, 2}, new int[]{1, 4}, new int[]{3, 4, 5}, new int[]{2, 5});
+        List<Integer> selected = new GreedySetCoveringSolver(0, 0).solve(6, columns);
+        assertEquals(Arrays.asList(1, 3), selected);
+    }
+
+    @Test
+    public void localSearchReplacesALargeColumnBySmallerOnes(){
+        //the construction takes the large column first, which leaves none of the others available
+        List<int[]> columns = Arrays.asList(
+                new int[]{0, 1, 2}, new int[]{0, 3}, new int[]{1, 4}, new int[]{2, 5});
+        List<Integer> selected = new GreedySetCoveringSolver(0, 0).solve(6, columns);
+        assertEquals(Arrays.asList(1, 2, 3), selected);
+    }
+
+    @Test
+    public void singleElementColumnsAreNotSelected(){
+        List<int[]> columns = Arrays.asList(new int[]{0}, new int[]{1});
+        assertTrue(new GreedySetCoveringSolver(0, 0).solve(2, columns).isEmpty());
+    }
+
+    @Test
+    public void selectedColumnsAreDisjoint(){
+        SplittableRandom random = new SplittableRandom(42);
+        int nbElements = 60;
+        List<int[]> columns = new ArrayList<>();
+        for(int c = 0; c < 200; c++){
+            columns.add(random.ints(2 + random.nextInt(6), 0, nbElements).distinct().toArray());
+        }
+        List<Integer> selected = new GreedySetCoveringSolver(5, 7).solve(nbElements, columns);
+        assertFalse(selected.isEmpty());
+        BitSet covered = new BitSet();
+        for(int c: selected){
+            for(int e: columns.get(c)){
+                assertFalse("element " + e + " is covered twice", covered.get(e));
+                covered.set(e);
+            }
+        }
+    }
+
+    @Test
+    public void sameSeedGivesSameSelection(){
+        SplittableRandom random = new SplittableRandom(3);
+        List<int[]> columns = new ArrayList<>();
+        for(int c = 0; c < 100; c++){
+            columns.add(random.ints(2 + random.nextInt(4), 0, 40).distinct().toArray());
+        }
+        assertEquals(new GreedySetCoveringSolver(4, 11).solve(40, columns),
+                new GreedySetCoveringSolver(4, 11).solve(40, columns));
+    }
+}
@@ -0,0 +1,258 @@
+package main.State;
+
+import main.PlacementObjects.PositionedRectangle;
+import main.PlacementObjects.Vector3D;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FreeRectangleStoreTest {
+    static final int WIDTH = 1200, DEPTH = 800;
+
+    @Test
+    public void placingInTheCornerLeavesTwoMaximalRectangles(){
+        FreeRectangleStore store = new FreeRectangleStore(WIDTH, DEPTH);
+        store.place(0, 0, 400, 300);
+        assertEquals(Arrays.asList("0,300,1200,500", "400,0,800,800"), rectangles(store));
+    }
+
+    @Test
+    public void findLeftFrontRanksTiesByWidthThenDepth(){
+        FreeRectangleStore store = new FreeRectangleStore(WIDTH, DEPTH);
+        store.place(0, 0, 400, 300);
+        int i = store.findLeftFront(300, 300);
+        assertEquals("0,300,1200,500", rectangle(store, i));
+        assertEquals(-1, store.findLeftFront(900, 900));
+    }
+
+    @Test
+    public void matchesTheListImplementationBelowTheIndexThreshold(){
+        for(long seed = 0; seed < 200; seed++){
+            SplittableRandom random = new SplittableRandom(seed);
+            FreeRectangleStore store = new FreeRectangleStore(WIDTH, DEPTH);
+            ReferenceFreeSpaces reference = new ReferenceFreeSpaces(WIDTH, DEPTH);
+            //large boxes at the left front most place, as the layer builders place them
+            for(int k = 0; k < 30; k++){
+                int w = 100 + random.nextInt(400), d = 100 + random.nextInt(400);
+                int i = store.findLeftFront(w, d);
+                PositionedRectangle expected = reference.findLeftFront(w, d);
+                assertEquals("seed " + seed, expected == null? null: rectangle(expected), i < 0? null: rectangle(store, i));
+                if(i < 0)
+                    break;
+                if(store.getWidth(i) < w || store.getDepth(i) < d){
+                    int t = w;
+                    w = d;
+                    d = t;
+                }
+                place(store, reference, store.getX(i), store.getY(i), w, d);
+                assertFalse(store.indexed);
+                assertEquals("seed " + seed + " box " + k, reference.rectangles(), rectangles(store));
+            }
+        }
+    }
+
+    @Test
+    public void matchesTheListImplementationWithTheGridIndex(){
+        for(long seed = 0; seed < 100; seed++){
+            SplittableRandom random = new SplittableRandom(seed);
+            FreeRectangleStore store = new FreeRectangleStore(WIDTH, DEPTH);
+            ReferenceFreeSpaces reference = new ReferenceFreeSpaces(WIDTH, DEPTH);
+            int maxSize = 0;
+            for(int k = 0; k < 80 && store.size() > 0; k++){
+                placeRandomly(store, reference, random);
+                maxSize = Math.max(maxSize, store.size());
+                assertEquals("seed " + seed + " box " + k, reference.rectangles(), rectangles(store));
+            }
+            //a few wide boxes overlapping many rectangles at once, removed from the highest index down
+            for(int k = 0; k < 5; k++){
+                int y = random.nextInt(DEPTH - 20);
+                place(store, reference, random.nextInt(100), y, WIDTH / 2 + random.nextInt(WIDTH / 2 - 100), 10 + random.nextInt(10));
+                assertEquals("seed " + seed + " strip " + k, reference.rectangles(), rectangles(store));
+            }
+            assertTrue("seed " + seed + " only reached " + maxSize + " rectangles", maxSize > FreeRectangleStore.INDEX_THRESHOLD);
+            assertTrue(store.indexed);
+        }
+    }
+
+    @Test
+    public void copyKeepsMatchingTheListImplementation(){
+        SplittableRandom random = new SplittableRandom(7);
+        FreeRectangleStore store = new FreeRectangleStore(WIDTH, DEPTH);
+        ReferenceFreeSpaces reference = new ReferenceFreeSpaces(WIDTH, DEPTH);
+        while(store.size() <= FreeRectangleStore.INDEX_THRESHOLD){
+            placeRandomly(store, reference, random);
+        }
+        FreeRectangleStore copy = new FreeRectangleStore(store);
+        assertTrue(copy.indexed);
+        assertEquals(orderedRectangles(store), orderedRectangles(copy));
+        for(int k = 0; k < 30 && copy.size() > 0; k++){
+            placeRandomly(copy, reference, random);
+            assertEquals("box " + k, reference.rectangles(), rectangles(copy));
+        }
+    }
+
+    @Test
+    public void rollbackRestoresTheRectanglesInTheirOrder(){
+        for(long seed = 0; seed < 100; seed++){
+            SplittableRandom random = new SplittableRandom(seed);
+            FreeRectangleStore store = new FreeRectangleStore(WIDTH, DEPTH);
+            ReferenceFreeSpaces reference = new ReferenceFreeSpaces(WIDTH, DEPTH);
+            //some marks are taken below the index threshold and rolled back from above it
+            for(int k = random.nextInt(60); k > 0 && store.size() > 0; k--){
+                placeRandomly(store, reference, random);
+            }
+            FreeRectangleStore atMark = new FreeRectangleStore(store);
+            List<String> rectanglesAtMark = orderedRectangles(store);
+            int mark = store.mark();
+            for(int k = 1 + random.nextInt(40); k > 0 && store.size() > 0; k--){
+                placeRandomly(store, null, random);
+            }
+            store.rollback(mark);
+            assertEquals("seed " + seed, rectanglesAtMark, orderedRectangles(store));
+            assertEquals(0, store.journalSize);
+            //the grid index of the rolled back store has to stay consistent with its rectangles. It stays built when the
+            //mark was taken below the threshold, so only the rectangles are compared, not their order
+            for(int k = 0; k < 20 && store.size() > 0; k++){
+                int i = random.nextInt(store.size());
+                int x = store.getX(i), y = store.getY(i);
+                int w = 1 + random.nextInt(Math.min(store.getWidth(i), 80));
+                int d = 1 + random.nextInt(Math.min(store.getDepth(i), 80));
+                store.place(x, y, w, d);
+                atMark.place(x, y, w, d);
+                assertEquals("seed " + seed + " box " + k, rectangles(atMark), rectangles(store));
+            }
+        }
+    }
+
+    @Test
+    public void nestedMarksAreReleasedInOrder(){
+        SplittableRandom random = new SplittableRandom(11);
+        FreeRectangleStore store = new FreeRectangleStore(WIDTH, DEPTH);
+        ReferenceFreeSpaces reference = new ReferenceFreeSpaces(WIDTH, DEPTH);
+        int outer = store.mark();
+        for(int k = 0; k < 10; k++){
+            placeRandomly(store, reference, random);
+        }
+        List<String> rectanglesAtInner = orderedRectangles(store);
+        int inner = store.mark();
+        for(int k = 0; k < 50 && store.size() > 0; k++){
+            placeRandomly(store, null, random);
+        }
+        store.rollback(inner);
+        assertEquals(rectanglesAtInner, orderedRectangles(store));
+        assertTrue(store.journalSize > 0);
+        placeRandomly(store, reference, random);
+        store.commit(outer);
+        assertEquals(0, store.journalSize);
+        assertEquals(reference.rectangles(), rectangles(store));
+    }
+
+    //Places a small box at a random place of a random free rectangle, which fragments the free space quickly
+    static void placeRandomly(FreeRectangleStore store, ReferenceFreeSpaces reference, SplittableRandom random){
+        int i = random.nextInt(store.size());
+        int w = 1 + random.nextInt(Math.min(store.getWidth(i), 80));
+        int d = 1 + random.nextInt(Math.min(store.getDepth(i), 80));
+        int x = store.getX(i) + random.nextInt(store.getWidth(i) - w + 1);
+        int y = store.getY(i) + random.nextInt(store.getDepth(i) - d + 1);
+        place(store, reference, x, y, w, d);
+    }
+
+    //reference null places the box in the store only
+    static void place(FreeRectangleStore store, ReferenceFreeSpaces reference, int x, int y, int w, int d){
+        store.place(x, y, w, d);
+        if(reference != null)
+            reference.place(new PositionedRectangle(w, d, new Vector3D(x, y, 0)));
+    }
+
+    //the free rectangles as sorted "x,y,width,depth" strings, so that stores can be compared whatever their order
+    static List<String> rectangles(FreeRectangleStore store){
+        List<String> rectangles = orderedRectangles(store);
+        Collections.sort(rectangles);
+        return rectangles;
+    }
+
+    static List<String> orderedRectangles(FreeRectangleStore store){
+        List<String> rectangles = new ArrayList<>();
+        for(int i = 0; i < store.size(); i++){
+            rectangles.add(rectangle(store, i));
+        }
+        return rectangles;
+    }
+
+    static String rectangle(FreeRectangleStore store, int i){
+        return store.getX(i) + "," + store.getY(i) + "," + store.getWidth(i) + "," + store.getDepth(i);
+    }
+
+    static String rectangle(PositionedRectangle r){
+        return r.getXLeft() + "," + r.getYFront() + "," + r.getWidth() + "," + r.getDepth();
+    }
+
+    //The free spaces of a layer as they were kept before FreeRectangleStore, a list of rectangles updated as in the
+    //former LayerState.updateFreeSpaces
+    static class ReferenceFreeSpaces {
+        ArrayList<PositionedRectangle> freespaces = new ArrayList<>();
+
+        ReferenceFreeSpaces(int width, int depth){
+            freespaces.add(new PositionedRectangle(width, depth, new Vector3D(0, 0, 0)));
+        }
+
+        void place(PositionedRectangle rectangle){
+            ArrayList<PositionedRectangle> freeSpacesToAdd = new ArrayList<>();
+            ArrayList<PositionedRectangle> freeSpacesToRemove = new ArrayList<>();
+            for(PositionedRectangle fs: freespaces){
+                if(fs.isOverlapping(rectangle)){
+                    freeSpacesToRemove.add(fs);
+                    List<PositionedRectangle> result = fs.segmentSpace(rectangle);
+                    ArrayList<PositionedRectangle> enclosedFreeSpacesToAdd = new ArrayList<>();
+                    ArrayList<PositionedRectangle> enclosedFreeSpacesInResult = new ArrayList<>();
+                    for(PositionedRectangle fs_to_add: freeSpacesToAdd){
+                        for(PositionedRectangle fs_of_result: result){
+                            if(fs_to_add.enclose(fs_of_result))
+                                enclosedFreeSpacesInResult.add(fs_of_result);
+                            else if(fs_of_result.enclose(fs_to_add))
+                                enclosedFreeSpacesToAdd.add(fs_to_add);
+                        }
+                    }
+                    freeSpacesToAdd.removeAll(enclosedFreeSpacesToAdd);
+                    result.removeAll(enclosedFreeSpacesInResult);
+                    freeSpacesToAdd.addAll(result);
+                }
+            }
+            freespaces.removeAll(freeSpacesToRemove);
+            ArrayList<PositionedRectangle> enclosedFreeSpacesToAdd = new ArrayList<>();
+            for(PositionedRectangle fs: freespaces){
+                for(PositionedRectangle fs_to_add: freeSpacesToAdd){
+                    if(fs.enclose(fs_to_add))
+                        enclosedFreeSpacesToAdd.add(fs_to_add);
+                }
+            }
+            freeSpacesToAdd.removeAll(enclosedFreeSpacesToAdd);
+            freespaces.addAll(freeSpacesToAdd);
+        }
+
+        PositionedRectangle findLeftFront(int w, int d){
+            PositionedRectangle best = null;
+            for(PositionedRectangle fs: freespaces){
+                if(!(fs.getWidth() >= w && fs.getDepth() >= d || fs.getWidth() >= d && fs.getDepth() >= w))
+                    continue;
+                if(best == null || fs.getXLeft() < best.getXLeft()
+                        || fs.getXLeft() == best.getXLeft() && (fs.getYFront() < best.getYFront()
+                        || fs.getYFront() == best.getYFront() && (fs.getWidth() > best.getWidth()
+                        || fs.getWidth() == best.getWidth() && fs.getDepth() > best.getDepth())))
+                    best = fs;
+            }
+            return best;
+        }
+
+        List<String> rectangles(){
+            List<String> rectangles = new ArrayList<>();
+            for(PositionedRectangle fs: freespaces){
+                rectangles.add(rectangle(fs));
+            }
+            Collections.sort(rectangles);
+            return rectangles;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package main.State;
+
+import main.PackingObjects.Box;
+import main.PlacementObjects.Placement;
+import main.PlacementObjects.Vector3D;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LayerCacheTest {
+    static final int WIDTH = 1200, DEPTH = 800, MAX_WEIGHT = 1000;
+
+    @Test
+    public void layerIsReplayedOntoTheBoxesOfAnotherOrder(){
+        LayerCache cache = new LayerCache(16);
+        List<Box> first = boxes("a");
+        cache.put(first, WIDTH, DEPTH, MAX_WEIGHT, rowLayer(first));
+        List<Box> second = boxes("b");
+        LayerState replayed = cache.get(second, WIDTH, DEPTH, MAX_WEIGHT);
+        assertEquals(rowLayer(second).toString2D(), replayed.toString2D());
+        assertNull(cache.get(boxes("c").subList(0, 2), WIDTH, DEPTH, MAX_WEIGHT));
+    }
+
+    @Test
+    public void concurrentSearchesOfTheSameClusterRunOnce() throws Exception {
+        LayerCache cache = new LayerCache(16);
+        AtomicInteger nbSearches = new AtomicInteger();
+        CountDownLatch searching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Box> first = boxes("a");
+            Future<LayerState> firstLayer = executor.submit(() -> cache.get(first, WIDTH, DEPTH, MAX_WEIGHT, () -> {
+                nbSearches.incrementAndGet();
+                searching.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return rowLayer(first);
+            }));
+            searching.await();
+            //the other orders find the search under way, or its layer in the cache if it is already over
+            List<Future<LayerState>> otherLayers = new ArrayList<>();
+            List<List<Box>> others = new ArrayList<>();
+            for(int k = 0; k < 3; k++){
+                List<Box> other = boxes("o" + k);
+                others.add(other);
+                otherLayers.add(executor.submit(() -> cache.get(other, WIDTH, DEPTH, MAX_WEIGHT, () -> {
+                    nbSearches.incrementAndGet();
+                    return rowLayer(other);
+                })));
+            }
+            //gives the other orders the time to find the search under way
+            Thread.sleep(50);
+            release.countDown();
+            assertEquals(rowLayer(first).toString2D(), firstLayer.get().toString2D());
+            for(int k = 0; k < others.size(); k++){
+                LayerState layer = otherLayers.get(k).get();
+                assertEquals(rowLayer(others.get(k)).toString2D(), layer.toString2D());
+                for(Placement p: layer.getPlacements()){
+                    assertTrue(others.get(k).contains(p.getBox()));
+                }
+            }
+            assertEquals(1, nbSearches.get());
+            assertEquals(1, cache.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedSearchIsRunAgainByTheNextOrder(){
+        LayerCache cache = new LayerCache(16);
+        try {
+            cache.get(boxes("a"), WIDTH, DEPTH, MAX_WEIGHT, () -> {
+                throw new IllegalStateException("search failed");
+            });
+            fail("the search should have thrown");
+        } catch (IllegalStateException e) {
+            assertEquals("search failed", e.getMessage());
+        }
+        assertEquals(0, cache.size());
+        List<Box> second = boxes("b");
+        LayerState layer = cache.get(second, WIDTH, DEPTH, MAX_WEIGHT, () -> rowLayer(second));
+        assertEquals(rowLayer(second).toString2D(), layer.toString2D());
+        assertEquals(1, cache.size());
+    }
+
+    //Three boxes of two types, the same dimensions whatever the prefix of their ids
+    static List<Box> boxes(String prefix){
+        return Arrays.asList(new Box(prefix + "0", 0, 400, 300, 200, 10, null),
+                new Box(prefix + "1", 1, 400, 300, 200, 10, null),
+                new Box(prefix + "2", 2, 250, 500, 200, 20, null));
+    }
+
+    //The boxes side by side along the width, as they come
+    static LayerState rowLayer(List<Box> boxes){
+        LayerState layer = new LayerState(WIDTH, DEPTH);
+        int x = 0;
+        for(Box box: boxes){
+            layer.updateState(box, new Vector3D(x, 0, 0), box.getOrientations().getOrientation(0));
+            x += box.getOrientations().getWidth(0);
+        }
+        return layer;
+    }
+}
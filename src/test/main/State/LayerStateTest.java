@@ -0,0 +1,98 @@
+package main.State;
+
+import main.PackingObjects.Box;
+import main.PackingObjects.Cuboid;
+import main.PlacementObjects.PositionedRectangle;
+import main.PlacementObjects.Vector3D;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LayerStateTest {
+    static final int WIDTH = 1200, DEPTH = 800;
+
+    @Test
+    public void rollbackRestoresTheLayer(){
+        for(long seed = 0; seed < 100; seed++){
+            SplittableRandom random = new SplittableRandom(seed);
+            LayerState layer = new LayerState(WIDTH, DEPTH);
+            int nbBoxes = placeBoxes(layer, random, 0, random.nextInt(30));
+            String before = describe(layer);
+            LayerState.Checkpoint checkpoint = layer.mark();
+            placeBoxes(layer, random, nbBoxes, 1 + random.nextInt(40));
+            layer.rollback(checkpoint);
+            assertEquals("seed " + seed, before, describe(layer));
+        }
+    }
+
+    @Test
+    public void rolledBackLayerPlacesLikeAFreshOne(){
+        for(long seed = 0; seed < 50; seed++){
+            SplittableRandom random = new SplittableRandom(seed);
+            LayerState layer = new LayerState(WIDTH, DEPTH);
+            LayerState.Checkpoint checkpoint = layer.mark();
+            placeBoxes(layer, random, 0, 40);
+            layer.rollback(checkpoint);
+            LayerState fresh = new LayerState(WIDTH, DEPTH);
+            placeBoxes(layer, new SplittableRandom(seed + 1000), 0, 40);
+            placeBoxes(fresh, new SplittableRandom(seed + 1000), 0, 40);
+            assertEquals("seed " + seed, describe(fresh), describe(layer));
+            assertEquals(fresh, layer);
+        }
+    }
+
+    @Test
+    public void commitKeepsThePlacements(){
+        SplittableRandom random = new SplittableRandom(5);
+        LayerState layer = new LayerState(WIDTH, DEPTH);
+        LayerState.Checkpoint outer = layer.mark();
+        int nbBoxes = placeBoxes(layer, random, 0, 10);
+        String afterOuter = describe(layer);
+        LayerState.Checkpoint inner = layer.mark();
+        placeBoxes(layer, random, nbBoxes, 10);
+        layer.rollback(inner);
+        assertEquals(afterOuter, describe(layer));
+        layer.commit(outer);
+        assertEquals(afterOuter, describe(layer));
+        assertEquals(nbBoxes, layer.getNumberOfBoxes());
+    }
+
+    //Places up to nbBoxes random boxes numbered from firstIndex at the left front most free space that holds them,
+    //returns the number of the next box
+    static int placeBoxes(LayerState layer, SplittableRandom random, int firstIndex, int nbBoxes){
+        int index = firstIndex;
+        for(int k = 0; k < nbBoxes; k++){
+            int w = 20 + random.nextInt(200), d = 20 + random.nextInt(200);
+            int i = layer.findFeasibleFreeSpace(w, d);
+            if(i < 0)
+                continue;
+            PositionedRectangle fs = layer.getFreeSpace(i);
+            if(fs.getWidth() < w || fs.getDepth() < d){
+                int t = w;
+                w = d;
+                d = t;
+            }
+            Box box = new Box("b" + index, index, w, d, 100 + random.nextInt(3), 1 + random.nextInt(10), null);
+            layer.updateState(box, new Vector3D(fs.getXLeft(), fs.getYFront(), 0), new Cuboid(w, d, box.getHeight()));
+            index++;
+        }
+        return index;
+    }
+
+    //Everything a rollback has to restore, the free spaces in their storage order
+    static String describe(LayerState layer){
+        StringBuilder description = new StringBuilder();
+        description.append(layer.getNumberOfBoxes()).append(' ').append(layer.getLayerHeight()).append(' ')
+                .append(layer.getTotalWeight()).append(' ').append(layer.getTotalUsedArea()).append(' ')
+                .append(layer.getTotalFreeArea()).append(' ').append(layer.getGeometryHash()).append(' ')
+                .append(layer.getBoxIndices()).append('\n').append(layer.toString2D());
+        for(int i = 0; i < layer.getNbFreeSpaces(); i++){
+            PositionedRectangle fs = layer.getFreeSpace(i);
+            description.append(fs.getXLeft()).append(',').append(fs.getYFront()).append(',').append(fs.getWidth())
+                    .append(',').append(fs.getDepth()).append(';');
+        }
+        return description.toString();
+    }
+}
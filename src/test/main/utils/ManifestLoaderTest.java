@@ -0,0 +1,113 @@
+package main.utils;
+
+import main.PackingObjects.Box;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ManifestLoaderTest {
+    static final String HEADER = "sku\tLength(mm)\tWidth(mm)\tHeight(mm)\tWeight(g)\tloadCapacity(kg/m^2)\tsupporType";
+
+    @Test
+    public void everyChunkCountReadsTheRowsOfInputReader() throws IOException {
+        String manifest = HEADER + "\n"
+                + "267984\t290\t214\t361\t14975\t1544\tFULL\r\n"
+                + "\r\n"
+                + "1501402\t394\t194\t114\t5715\t1944\tCORNERS\n"
+                + "   \t \n"
+                + "\n"
+                + "77\t10\t20\t30\t40\t-1\tSHORT_EDGES\r\n"
+                + "b-\u00fc\t1\t2\t3\t4\t5\tALL_EDGES";
+        //more chunks than bytes leaves some of them empty, and every boundary falls once in a header, a line, a CR or
+        //a blank line
+        int size = manifest.getBytes(StandardCharsets.UTF_8).length;
+        for(int nbChunks = 1; nbChunks <= size + 3; nbChunks++){
+            assertEquals("chunks " + nbChunks, readWithInputReader(manifest), load(manifest, nbChunks));
+        }
+    }
+
+    @Test
+    public void headerSpanningSeveralChunksIsSkipped() throws IOException {
+        StringBuilder header = new StringBuilder(HEADER);
+        while(header.length() < 500){
+            header.append("\tpadding");
+        }
+        String manifest = header + "\n1\t10\t20\t30\t40\t50\tFULL\n2\t10\t20\t30\t40\t50\tFULL\n";
+        for(int nbChunks = 1; nbChunks <= 40; nbChunks++){
+            assertEquals("chunks " + nbChunks, Arrays.asList("1,20,10,30,40,50,FULL", "2,20,10,30,40,50,FULL"), load(manifest, nbChunks));
+        }
+    }
+
+    @Test
+    public void lineStartingOnAChunkBoundaryIsReadOnce() throws IOException {
+        String line = "1\t10\t20\t30\t40\t50\tFULL\n";
+        //the header and the first line take exactly the first half of the file, so that the second chunk starts with
+        //the second line
+        StringBuilder header = new StringBuilder("sku");
+        while(header.length() + 1 < line.length()){
+            header.append('x');
+        }
+        String manifest = header + "\n" + line + "2" + line.substring(1) + "3" + line.substring(1);
+        assertEquals(manifest.length() / 2, header.length() + 1 + line.length());
+        assertEquals(Arrays.asList("1,20,10,30,40,50,FULL", "2,20,10,30,40,50,FULL", "3,20,10,30,40,50,FULL"), load(manifest, 2));
+    }
+
+    @Test
+    public void headerOnlyOrEmptyFileHasNoRows() throws IOException {
+        for(String manifest: new String[]{"", HEADER, HEADER + "\r\n", HEADER + "\n \n\r\n"}){
+            for(int nbChunks = 1; nbChunks <= 8; nbChunks++){
+                assertTrue(load(manifest, nbChunks).isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void malformedLineIsNamed() throws IOException {
+        for(String line: new String[]{"1\t10\tx\t30\t40\t50\tFULL", "1\t10\t20", "1\t10\t20\t30\t40\t50\tFLAT"}){
+            for(int nbChunks = 1; nbChunks <= 3; nbChunks++){
+                try {
+                    load(HEADER + "\n2\t10\t20\t30\t40\t50\tFULL\n" + line + "\r\n", nbChunks);
+                    fail("no error for " + line);
+                } catch (IllegalArgumentException e) {
+                    assertEquals("Malformed manifest line: " + line, e.getMessage());
+                }
+            }
+        }
+    }
+
+    //The boxes loaded from a file with the manifest, as sorted "id,width,depth,height,weight,load capacity,support type"
+    static List<String> load(String manifest, int nbChunks) throws IOException {
+        Path file = Files.createTempFile("manifest", ".txt");
+        try {
+            Files.write(file, manifest.getBytes(StandardCharsets.UTF_8));
+            BoxColumns columns = new ManifestLoader(nbChunks).load(file.toString());
+            List<String> rows = new ArrayList<>();
+            for(int row = 0; row < columns.size(); row++){
+                rows.add(columns.getId(row) + "," + columns.getWidth(row) + "," + columns.getDepth(row) + ","
+                        + columns.getHeight(row) + "," + columns.getWeight(row) + "," + columns.getLoadCapacity(row) + ","
+                        + columns.getSupportType(row));
+            }
+            Collections.sort(rows);
+            return rows;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    static List<String> readWithInputReader(String manifest) throws IOException {
+        List<String> rows = new ArrayList<>();
+        for(Box box: new InputReader().readData(new StringReader(manifest)).values()){
+            rows.add(box.getId() + "," + box.getWidth() + "," + box.getDepth() + "," + box.getHeight() + ","
+                    + box.getWeight() + "," + box.getLoadCapacity() + "," + box.getSupportType());
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+}